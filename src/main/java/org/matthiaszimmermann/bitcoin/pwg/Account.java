@@ -1,9 +1,7 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
 import org.bitcoinj.core.AddressFormatException;
-import org.bitcoinj.core.Base58;
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.crypto.ChildNumber;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.HDKeyDerivation;
 import org.json.JSONArray;
@@ -42,20 +40,31 @@ public class Account {
      *
      */
     public Account(NetworkParameters params, DeterministicKey wKey, int child) {
+        this(params, new DerivationEngine(wKey), child);
+    }
+
+    /**
+     * Constructor for an account derived with the engine of its wallet.
+     *
+     * @param NetworkParameters params
+     * @param DerivationEngine walletEngine derivation engine for the wallet key
+     * @param int child id within the wallet for this account
+     *
+     */
+    Account(NetworkParameters params, DerivationEngine walletEngine, int child) {
 
         this.params = params;
         aID = child;
 
         // L0PRV & STDVx: private derivation.
-        int childnum = child;
-        childnum |= ChildNumber.HARDENED_BIT;
-        aKey = HDKeyDerivation.deriveChildKey(wKey, childnum);
+        DerivationEngine engine = walletEngine.deriveEngine(child, true);
+        aKey = engine.getParent();
 
-        strXPUB = aKey.serializePubB58(params);
+        strXPUB = Base58Check.encodeChecked(aKey.serializePublic(params));
 
         chains = new ArrayList<Chain>();
-        chains.add(new Chain(params, aKey, true));
-        chains.add(new Chain(params, aKey, false));
+        chains.add(new Chain(params, engine, true));
+        chains.add(new Chain(params, engine, false));
 
         strPath = aKey.getPathAsString();
 
@@ -79,9 +88,10 @@ public class Account {
 
         strXPUB = xpub;
 
+        DerivationEngine engine = new DerivationEngine(aKey);
         chains = new ArrayList<Chain>();
-        chains.add(new Chain(params, aKey, true));
-        chains.add(new Chain(params, aKey, false));
+        chains.add(new Chain(params, engine, true));
+        chains.add(new Chain(params, engine, false));
 
     }
 
@@ -93,7 +103,7 @@ public class Account {
      */
     private DeterministicKey createMasterPubKeyFromXPub(String xpubstr) throws AddressFormatException {
 
-        byte[] xpubBytes = Base58.decodeChecked(xpubstr);
+        byte[] xpubBytes = Base58Check.decodeChecked(xpubstr, Base58Check.EXTENDED_KEY_LENGTH);
 
         ByteBuffer bb = ByteBuffer.wrap(xpubBytes);
         if(bb.getInt() != 0x0488B21E)   {
@@ -1,13 +1,9 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
-import java.math.BigInteger;
-
 import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.core.Utils;
-import org.bitcoinj.crypto.ChildNumber;
 import org.bitcoinj.crypto.DeterministicKey;
-import org.bitcoinj.crypto.HDKeyDerivation;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -16,17 +12,23 @@ import org.json.JSONObject;
  *
  * Address.java : an address in a BIP44 wallet account chain
  *
+ * Key derivation and all values computed from the key are deferred until
+ * first use and then kept for subsequent calls. Hashes are computed with the
+ * per thread digests of Hash160.
+ *
  */
 public class Address {
 
     private int childNum;
-    private String strPath = null;
-    private ECKey ecKey = null;
-    private byte[] pubKey = null;
-    private byte[] pubKeyHash = null;
-
+    private DerivationEngine engine = null;
     private NetworkParameters params = null;
 
+    private volatile ECKey ecKey = null;
+    private volatile byte[] pubKey = null;
+    private volatile byte[] pubKeyHash = null;
+    private volatile String strPath = null;
+    private volatile String strAddress = null;
+
     @SuppressWarnings("unused")
 	private Address() { }
 
@@ -39,32 +41,92 @@ public class Address {
      *
      */
     public Address(NetworkParameters params, DeterministicKey cKey, int child) {
+        this(params, new DerivationEngine(cKey), child);
+    }
+
+    /**
+     * Constructor an HD address derived with the engine of its chain.
+     *
+     * @param NetworkParameters params
+     * @param DerivationEngine engine derivation engine for the chain key
+     * @param int child index of this address in its chain
+     *
+     */
+    Address(NetworkParameters params, DerivationEngine engine, int child) {
 
         this.params = params;
+        this.engine = engine;
         childNum = child;
+    }
+
+    /**
+     * Constructor an HD address with key and hash from a batch derivation.
+     *
+     * @param NetworkParameters params
+     * @param DerivationEngine engine derivation engine for the chain key
+     * @param int child index of this address in its chain
+     * @param ECKey key derived key of this address
+     * @param byte[] hash hash160 of the public key, may be null
+     *
+     */
+    Address(NetworkParameters params, DerivationEngine engine, int child, ECKey key, byte[] hash) {
+
+        this(params, engine, child);
+        key.setCreationTimeSeconds(Utils.now().getTime() / 1000);
+        ecKey = key;
+        pubKeyHash = hash;
+    }
+
+    /**
+     * Derive key for this address on first use (double checked locking on volatile field).
+     *
+     * @return ECKey
+     *
+     */
+    private ECKey getKey() {
+        ECKey key = ecKey;
 
-        DeterministicKey dk = HDKeyDerivation.deriveChildKey(cKey, new ChildNumber(childNum, false));
-        // compressed WIF private key format
+        if(key == null) {
+            synchronized(this) {
+                key = ecKey;
+
+                if(key == null) {
+                    key = deriveKey();
+                    ecKey = key;
+                }
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Derive the key of this address now instead of on first use.
+     *
+     * @return Address this address
+     *
+     */
+    Address resolve() {
+        getKey();
+        return this;
+    }
+
+    private ECKey deriveKey() {
+        ECKey key = null;
+
+        DeterministicKey dk = engine.deriveChild(childNum, false);
+        // the derived key already holds its public point, reuse it instead of multiplying again
         if(dk.hasPrivKey()) {
-//            byte[] prepended0Byte = ArrayUtils.addAll(new byte[1], dk.getPrivKeyBytes());
-        	byte[] getPrivKeyBytes = dk.getPrivKeyBytes();
-        	byte[] prepended0Byte = new byte[1 + getPrivKeyBytes.length];
-        	prepended0Byte[0] = 0;
-            System.arraycopy(getPrivKeyBytes, 0, prepended0Byte, 1, getPrivKeyBytes.length);
-            
-            ecKey = ECKey.fromPrivate(new BigInteger(prepended0Byte), true);
+            key = ECKey.fromPrivateAndPrecalculatedPublic(dk.getPrivKey(), dk.getPubKeyPoint());
         }
         else {
-            ecKey = ECKey.fromPublicOnly(dk.getPubKey());
+            key = ECKey.fromPublicOnly(dk.getPubKeyPoint());
         }
 
         long now = Utils.now().getTime() / 1000;    // use Unix time (in seconds)
-        ecKey.setCreationTimeSeconds(now);
+        key.setCreationTimeSeconds(now);
 
-        pubKey = ecKey.getPubKey();
-        pubKeyHash = ecKey.getPubKeyHash();
-
-        strPath = dk.getPathAsString();
+        return key;
     }
 
     /**
@@ -74,7 +136,14 @@ public class Address {
      *
      */
     public byte[] getPubKey() {
-        return pubKey;
+        byte[] bytes = pubKey;
+
+        if(bytes == null) {
+            bytes = getKey().getPubKey();
+            pubKey = bytes;
+        }
+
+        return bytes;
     }
 
     /**
@@ -84,7 +153,14 @@ public class Address {
      *
      */
     public byte[] getPubKeyHash() {
-        return pubKeyHash;
+        byte[] bytes = pubKeyHash;
+
+        if(bytes == null) {
+            bytes = Hash160.hash160(getPubKey());
+            pubKeyHash = bytes;
+        }
+
+        return bytes;
     }
 
     /**
@@ -94,7 +170,14 @@ public class Address {
      *
      */
     public String getAddressString() {
-        return ecKey.toAddress(params).toString();
+        String address = strAddress;
+
+        if(address == null) {
+            address = Hash160.toAddress(params.getAddressHeader(), getPubKeyHash());
+            strAddress = address;
+        }
+
+        return address;
     }
 
     /**
@@ -104,9 +187,10 @@ public class Address {
      *
      */
     public String getPrivateKeyString() {
+        ECKey key = getKey();
 
-        if(ecKey.hasPrivKey()) {
-            return ecKey.getPrivateKeyEncoded(params).toString();
+        if(key.hasPrivKey()) {
+            return key.getPrivateKeyEncoded(params).toString();
         }
         else    {
             return null;
@@ -121,7 +205,7 @@ public class Address {
      *
      */
     public org.bitcoinj.core.Address getAddress() {
-        return ecKey.toAddress(params);
+        return new org.bitcoinj.core.Address(params, getPubKeyHash());
     }
 
     /**
@@ -131,7 +215,14 @@ public class Address {
      *
      */
     public String getPath() {
-        return strPath;
+        String path = strPath;
+
+        if(path == null) {
+            path = String.format("%s/%d", engine.getPath(), childNum);
+            strPath = path;
+        }
+
+        return path;
     }
 
     /**
@@ -150,7 +241,7 @@ public class Address {
             JSONObject obj = new JSONObject();
 
             obj.put("address", getAddressString());
-            if(ecKey.hasPrivKey() && includeKey) {
+            if(includeKey && getKey().hasPrivKey()) {
                 obj.put("key", getPrivateKeyString());
             }
 
@@ -0,0 +1,77 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ *
+ * AddressCache.java : memoizes the derived addresses of a chain
+ *
+ * Low indices are kept in an index addressed array, higher indices in a
+ * concurrent map that stops growing once it holds MAP_SIZE_MAX entries.
+ *
+ */
+class AddressCache {
+
+	public static final int ARRAY_SIZE = 64;
+	public static final int MAP_SIZE_MAX = 4096;
+
+	private final AtomicReferenceArray<Address> array = new AtomicReferenceArray<>(ARRAY_SIZE);
+	private final ConcurrentHashMap<Integer, Address> map = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Return the cached address for the provided index, derive and cache it on a miss.
+	 *
+	 * @param int index address index in the chain
+	 * @param IntFunction<Address> derivation used on a cache miss
+	 *
+	 * @return Address
+	 *
+	 */
+	public Address get(int index, IntFunction<Address> derivation) {
+		if(index >= 0 && index < ARRAY_SIZE) {
+			Address address = array.get(index);
+
+			if(address != null) {
+				hits.increment();
+				return address;
+			}
+
+			misses.increment();
+			address = derivation.apply(index);
+
+			// a concurrent miss may have won the race, all callers share its instance
+			return array.compareAndSet(index, null, address) ? address : array.get(index);
+		}
+
+		Address address = map.get(index);
+
+		if(address != null) {
+			hits.increment();
+			return address;
+		}
+
+		misses.increment();
+		address = derivation.apply(index);
+
+		if(map.size() < MAP_SIZE_MAX) {
+			Address cached = map.putIfAbsent(index, address);
+			return cached != null ? cached : address;
+		}
+
+		return address;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+}
@@ -0,0 +1,86 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ *
+ * AddressSpliterator.java : splittable range of address indices of a chain
+ *
+ * Splits halve the remaining index range, so parallel streams spread large ranges 
+ * over the fork join pool. Each address is derived by the thread that advances to it,
+ * bulk traversal derives batches of addresses with a shared normalization.
+ *
+ */
+class AddressSpliterator implements Spliterator<Address> {
+
+	// ranges below this size are not split any further
+	public static final int SPLIT_SIZE_MIN = 16;
+
+	// number of addresses derived together by forEachRemaining
+	public static final int BATCH_SIZE = 256;
+
+	private final Chain chain;
+	private int index;
+	private final int fence;
+
+	/**
+	 * Constructor for an address range.
+	 *
+	 * @param Chain chain to derive the addresses from
+	 * @param int from first index (inclusive)
+	 * @param int fence last index (exclusive)
+	 *
+	 */
+	AddressSpliterator(Chain chain, int from, int fence) {
+		this.chain = chain;
+		this.index = from;
+		this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Address> action) {
+		if(index >= fence) {
+			return false;
+		}
+
+		action.accept(chain.newAddress(index++).resolve());
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Address> action) {
+		while(index < fence) {
+			int count = Math.min(BATCH_SIZE, fence - index);
+			List<Address> batch = chain.deriveAddresses(index, count);
+			index += count;
+			batch.forEach(action);
+		}
+	}
+
+	@Override
+	public Spliterator<Address> trySplit() {
+		int size = fence - index;
+
+		if(size < 2 * SPLIT_SIZE_MIN) {
+			return null;
+		}
+
+		int mid = index + size / 2;
+		Spliterator<Address> prefix = new AddressSpliterator(chain, index, mid);
+		index = mid;
+
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return fence - index;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | DISTINCT | NONNULL | IMMUTABLE;
+	}
+}
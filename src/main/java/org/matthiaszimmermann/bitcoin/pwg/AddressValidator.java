@@ -0,0 +1,237 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.codec.DecoderException;
+import org.bitcoinj.core.NetworkParameters;
+import org.json.JSONObject;
+
+/**
+ *
+ * AddressValidator.java : validates lists of addresses, optionally against a wallet inventory
+ *
+ * Each line holds one address, empty lines are skipped. An address is valid if it
+ * is a Base58Check pay to public key hash address of the network and, with an
+ * inventory, one of the addresses of the inventory wallet files. Lines are
+ * validated in parallel on a work stealing pool, decoding does not allocate.
+ *
+ */
+public class AddressValidator {
+
+	public enum Status {
+		/** valid address, in the inventory if one is set */
+		OK,
+		/** character outside of the Base58 alphabet */
+		INVALID_CHARACTER,
+		/** not the encoding of 25 bytes */
+		INVALID_LENGTH,
+		/** checksum does not match */
+		INVALID_CHECKSUM,
+		/** address of another network or address type */
+		WRONG_NETWORK,
+		/** valid address, but not in the inventory */
+		NOT_IN_INVENTORY
+	}
+
+	private final NetworkParameters params;
+	private final int parallelism;
+	private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[Base58Check.ADDRESS_LENGTH]);
+
+	private Set<ByteBuffer> inventory = null;
+
+	/**
+	 * Constructor for a validator.
+	 *
+	 * @param NetworkParameters params network of the addresses
+	 * @param int parallelism number of threads
+	 *
+	 */
+	public AddressValidator(NetworkParameters params, int parallelism) {
+		this.params = params;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Load the addresses of the provided wallet files as inventory. Only the public
+	 * part of the files is read, no pass phrase is needed.
+	 *
+	 * @param List<File> walletFiles
+	 *
+	 * @return int number of addresses in the inventory
+	 *
+	 */
+	public int loadInventory(List<File> walletFiles) throws IOException, DecoderException {
+		Set<ByteBuffer> hashes = new HashSet<>();
+
+		for(File file: walletFiles) {
+			for(WalletFile.Entry entry: WalletJsonReader.read(file, params).getAddresses()) {
+				hashes.add(ByteBuffer.wrap(entry.getHash160()));
+			}
+		}
+
+		inventory = Collections.unmodifiableSet(hashes);
+		return inventory.size();
+	}
+
+	/**
+	 * Validate a single address.
+	 *
+	 * @param String address
+	 *
+	 * @return Status
+	 *
+	 */
+	public Status validate(String address) {
+		byte[] bytes = buffers.get();
+
+		switch(Base58Check.decode(address, bytes, Base58Check.ADDRESS_LENGTH)) {
+		case Base58Check.OK: break;
+		case Base58Check.INVALID_CHARACTER: return Status.INVALID_CHARACTER;
+		case Base58Check.INVALID_CHECKSUM: return Status.INVALID_CHECKSUM;
+		default: return Status.INVALID_LENGTH;
+		}
+
+		if((bytes[0] & 0xFF) != params.getAddressHeader()) {
+			return Status.WRONG_NETWORK;
+		}
+
+		if(inventory != null && !inventory.contains(ByteBuffer.wrap(bytes, 1, Hash160.HASH_LENGTH).slice())) {
+			return Status.NOT_IN_INVENTORY;
+		}
+
+		return Status.OK;
+	}
+
+	/**
+	 * Validate the provided lines in parallel.
+	 *
+	 * @param List<String> lines one address per line
+	 *
+	 * @return Report
+	 *
+	 */
+	public Report validateAll(List<String> lines) throws InterruptedException {
+		Map<Status, LongAdder> counts = new EnumMap<>(Status.class);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		for(Status status: Status.values()) {
+			counts.put(status, new LongAdder());
+		}
+
+		try {
+			List<Failure> failures = pool.submit(() -> IntStream.range(0, lines.size())
+					.parallel()
+					.mapToObj(i -> {
+						String address = lines.get(i).trim();
+
+						if(address.isEmpty()) {
+							return null;
+						}
+
+						Status status = validate(address);
+						counts.get(status).increment();
+
+						return status == Status.OK ? null : new Failure(i + 1, address, status);
+					})
+					.filter(failure -> failure != null)
+					.collect(Collectors.toList()))
+					.get();
+
+			return new Report(counts, failures);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Invalid line of an address list.
+	 */
+	public static final class Failure {
+		private final int line;
+		private final String address;
+		private final Status status;
+
+		Failure(int line, String address, Status status) {
+			this.line = line;
+			this.address = address;
+			this.status = status;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public String getAddress() {
+			return address;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Return the failure as single line JSON object for reports.
+		 *
+		 * @return String
+		 *
+		 */
+		public String toJsonLine() {
+			JSONObject obj = new JSONObject();
+
+			obj.put("line", line);
+			obj.put("address", address);
+			obj.put("status", status.name());
+
+			return obj.toString();
+		}
+	}
+
+	/**
+	 * Counts per status and the invalid lines in line order.
+	 */
+	public static final class Report {
+		private final Map<Status, Long> counts = new EnumMap<>(Status.class);
+		private final List<Failure> failures;
+
+		Report(Map<Status, LongAdder> counts, List<Failure> failures) {
+			counts.forEach((status, count) -> this.counts.put(status, count.sum()));
+			this.failures = Collections.unmodifiableList(new ArrayList<>(failures));
+		}
+
+		public long getCount(Status status) {
+			return counts.get(status);
+		}
+
+		/**
+		 * Return the number of validated addresses, without empty lines.
+		 *
+		 * @return long
+		 *
+		 */
+		public long getTotal() {
+			return counts.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		public List<Failure> getFailures() {
+			return failures;
+		}
+	}
+}
@@ -1,18 +1,15 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.InvalidParameterSpecException;
-import java.security.spec.KeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public class AesUtility {
@@ -34,23 +31,72 @@ public class AesUtility {
 	}			
 	
 	AesUtility(String passPhrase) throws Exception {
-		this(passPhrase, SALT, ITERATION_COUNT, KEY_STRENGTH);
+		this(passPhrase, null);
+	}
+
+	/**
+	 * AES utility looking up the derived key in the provided cache, no caching if null.
+	 */
+	AesUtility(String passPhrase, DerivedKeyCache cache) throws Exception {
+		this(passPhrase, SALT, ITERATION_COUNT, KEY_STRENGTH, cache);
 	}
 	
-	AesUtility(String passPhrase, byte [] salt, int iterationCount, int keyStrength) throws NoSuchAlgorithmException, InvalidKeySpecException, NoSuchPaddingException, InvalidParameterSpecException {
-		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-		KeySpec spec = new PBEKeySpec(passPhrase.toCharArray(), salt, iterationCount, keyStrength);
-		SecretKey secret = factory.generateSecret(spec);
-		key = new SecretKeySpec(secret.getEncoded(), "AES");
+	AesUtility(String passPhrase, byte [] salt, int iterationCount, int keyStrength) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		this(passPhrase, salt, iterationCount, keyStrength, null);
+	}
+
+	AesUtility(String passPhrase, byte [] salt, int iterationCount, int keyStrength, DerivedKeyCache cache) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		byte [] keyBytes = deriveKey(passPhrase, salt, iterationCount, keyStrength, cache);
+		key = new SecretKeySpec(keyBytes, "AES");
+		Arrays.fill(keyBytes, (byte) 0);
+		dcipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+	}
+
+	/**
+	 * AES utility for an already derived key, the key bytes are copied.
+	 */
+	AesUtility(byte [] keyBytes) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		key = new SecretKeySpec(keyBytes, "AES");
 		dcipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
 	}
+
+	/**
+	 * PBKDF2WithHmacSHA1 key derivation. The SHA-1 output blocks of the key are computed 
+	 * in parallel, the result is identical to the key of the JCA SecretKeyFactory.
+	 */
+	static byte [] deriveKey(String passPhrase, byte [] salt, int iterationCount, int keyStrength) throws NoSuchAlgorithmException {
+		return deriveKey(passPhrase, salt, iterationCount, keyStrength, null);
+	}
+
+	/**
+	 * PBKDF2WithHmacSHA1 key derivation using the provided cache, no caching if null.
+	 */
+	static byte [] deriveKey(String passPhrase, byte [] salt, int iterationCount, int keyStrength, DerivedKeyCache cache) throws NoSuchAlgorithmException {
+		if(cache != null) {
+			byte [] key = cache.get(passPhrase, salt, iterationCount, keyStrength);
+			
+			if(key != null) {
+				return key;
+			}
+		}
+		
+		byte [] password = passPhrase.getBytes(StandardCharsets.UTF_8);
+		byte [] key = Pbkdf2Sha1.derive(password, salt, iterationCount, keyStrength / 8);
+		Arrays.fill(password, (byte) 0);
+		
+		if(cache != null) {
+			cache.put(passPhrase, salt, iterationCount, keyStrength, key);
+		}
+
+		return key;
+	}
 	
 	public SecretKey getSecretKey() {
 		return key;
 	}
 
 	public String encrypt(String data) throws Exception {
-		dcipher.init(Cipher.ENCRYPT_MODE, key);
+		dcipher.init(Cipher.ENCRYPT_MODE, key, EntropyService.getInstance().getRandom());
 		iv = dcipher.getIV();
 		byte[] utf8EncryptedData = dcipher.doFinal(data.getBytes());
 		return bytesToBase64(utf8EncryptedData);
@@ -1,7 +1,16 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
+import java.io.Console;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.IntFunction;
+
+import org.bitcoinj.crypto.MnemonicException;
+import org.bitcoinj.params.MainNetParams;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
@@ -12,12 +21,27 @@ public class Application {
 	public static final String SWITCH_DIRECTORY = "-d";
 	public static final String SWITCH_PASS_PHRASE = "-p";
 	public static final String SWITCH_VERIFY = "-v";
+	public static final String SWITCH_COUNT = "-n";
+	public static final String SWITCH_THREADS = "-t";
+	public static final String SWITCH_VERIFY_DIRECTORY = "-vd";
+	public static final String SWITCH_PASS_PHRASE_FILE = "-pf";
+	public static final String SWITCH_PASS_PHRASE_ENV = "-pe";
+	public static final String SWITCH_REPORT = "-r";
+	public static final String SWITCH_BIP85_MASTER = "-m";
+	public static final String SWITCH_BIP85_INDEX = "-i";
+	public static final String SWITCH_VALIDATE_ADDRESSES = "-va";
+	public static final String SWITCH_INVENTORY = "-vi";
+	public static final String SWITCH_VANITY_PREFIX = "-vp";
+	public static final String SWITCH_VANITY_MAX = "-vm";
 	
 	public static final String CREATE_OK = "WALLET CREATION OK";
 	public static final String CRATE_ERROR = "WALLET CREATION ERROR";
 	
 	public static final String VERIFY_OK = "WALLET VERIFICATION OK";
 	public static final String VERIFY_ERROR = "WALLET VERIFICATION ERROR";
+
+	public static final String VALIDATE_OK = "ADDRESS VALIDATION OK";
+	public static final String VALIDATE_ERROR = "ADDRESS VALIDATION ERROR";
 	
 	public static final String EXT_HTML = "html";
 	public static final String EXT_PNG = "png";
@@ -31,6 +55,42 @@ public class Application {
 	@Parameter(names = {SWITCH_VERIFY, "--verify-wallet-file"}, description = "verify the specified wallet file")
 	private String walletFile = null;
 
+	@Parameter(names = {SWITCH_VERIFY_DIRECTORY, "--verify-directory"}, description = "verify all wallet files of the specified directory or glob pattern (e.g. 'archive/*.json') in parallel")
+	private String verifyDirectory = null;
+
+	@Parameter(names = {SWITCH_PASS_PHRASE_FILE, "--pass-phrase-file"}, description = "read the pass phrase from the first line of the specified file")
+	private String passPhraseFile = null;
+
+	@Parameter(names = {SWITCH_PASS_PHRASE_ENV, "--pass-phrase-env"}, description = "read the pass phrase from the specified environment variable")
+	private String passPhraseEnv = null;
+
+	@Parameter(names = {SWITCH_REPORT, "--report"}, description = "write the per file verification report (json lines) to the specified file instead of the console")
+	private String reportFile = null;
+
+	@Parameter(names = {SWITCH_BIP85_MASTER, "--bip85-master-file"}, description = "derive the wallets as BIP85 children of the master mnemonic (or xprv) in the specified file")
+	private String bip85MasterFile = null;
+
+	@Parameter(names = {SWITCH_BIP85_INDEX, "--bip85-index"}, description = "BIP85 child index of the first wallet")
+	private int bip85Index = 0;
+
+	@Parameter(names = {SWITCH_VALIDATE_ADDRESSES, "--validate-addresses"}, description = "validate the addresses of the specified file (one per line) in parallel")
+	private String validateFile = null;
+
+	@Parameter(names = {SWITCH_INVENTORY, "--inventory"}, description = "only accept addresses of the wallet files of the specified directory or glob pattern when validating addresses")
+	private String inventoryDirectory = null;
+
+	@Parameter(names = {SWITCH_VANITY_PREFIX, "--vanity-prefix"}, description = "search a wallet whose receive address starts with the specified prefix (e.g. '1Cafe') on all worker threads")
+	private String vanityPrefix = null;
+
+	@Parameter(names = {SWITCH_VANITY_MAX, "--vanity-max"}, description = "maximum number of wallets tried in a vanity search (0: no limit)")
+	private long vanityMax = 0;
+
+	@Parameter(names = {SWITCH_COUNT, "--count"}, description = "number of wallets to create (batch mode if larger than 1)")
+	private int count = 1;
+
+	@Parameter(names = {SWITCH_THREADS, "--threads"}, description = "number of worker threads per stage in batch mode")
+	private int threads = BatchPipeline.THREADS_DEFAULT;
+
 	@Parameter(names = {"-s", "--silent"}, description = "silent mode, suppress command line output")
 	private boolean silent = false;
 
@@ -38,6 +98,9 @@ public class Application {
 	private boolean help;
 	
 	private Wallet wallet;
+	private List<File> walletFiles = new ArrayList<>();
+	private List<VerificationResult> verificationResults = new ArrayList<>();
+	private AddressValidator.Report addressReport = null;
 
 	public static void main(String[] args) throws Exception {
 		Application app = new Application();
@@ -50,21 +113,26 @@ public class Application {
 		if(walletFile != null) {
 			return verifyWalletFile();
 		}
+		else if(verifyDirectory != null) {
+			return verifyWalletFiles();
+		}
+		else if(validateFile != null) {
+			return validateAddresses();
+		}
+		else if(count > 1) {
+			return createWalletFiles();
+		}
 		else {
 			return createWalletFile();
 		}
 	}
 
 	public String verifyWalletFile() {
-		if(passPhrase == null) {
-			Scanner scanner = new Scanner(System.in);
-
-			//  prompt for the user's name
-			System.out.print("wallet pass phrase: ");
-
-			// get their input as a String
-			passPhrase = scanner.next();
-			scanner.close();
+		try {
+			passPhrase = resolvePassPhrase();
+		}
+		catch(Exception e) {
+			return String.format("%s %s", VERIFY_ERROR, e.getLocalizedMessage());
 		}
 
 		log("verifying wallet file ...");
@@ -86,30 +154,158 @@ public class Application {
 		}
 	}
 
+	public String verifyWalletFiles() {
+		List<File> files = null;
+
+		try {
+			checkThreads();
+			passPhrase = resolvePassPhrase();
+			files = WalletVerifier.listWalletFiles(verifyDirectory);
+		}
+		catch(Exception e) {
+			return String.format("%s %s", VERIFY_ERROR, e.getLocalizedMessage());
+		}
+
+		log(String.format("verifying %d wallet files using %d threads ...", files.size(), threads));
+		long start = System.currentTimeMillis();
+
+		try {
+			verificationResults = new WalletVerifier(passPhrase, threads).verifyAll(files);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return String.format("%s %s", VERIFY_ERROR, "verification interrupted");
+		}
+
+		List<String> report = new ArrayList<>();
+		long failures = 0;
+
+		for(VerificationResult result: verificationResults) {
+			report.add(result.toJsonLine());
+
+			if(!result.isOk()) {
+				failures++;
+			}
+		}
+
+		if(reportFile != null) {
+			FileUtility.saveToFile(report, reportFile);
+			log(String.format("verification report: %s", reportFile));
+		}
+		else {
+			report.forEach(this::log);
+		}
+
+		long millis = System.currentTimeMillis() - start;
+		log(String.format("%d of %d wallet files successfully verified in %d ms", files.size() - failures, files.size(), millis));
+
+		if(failures > 0) {
+			return String.format("%s %d of %d wallet files failed", VERIFY_ERROR, failures, files.size());
+		}
+
+		return String.format("%s %d wallet files", VERIFY_OK, files.size());
+	}
+
+	public String validateAddresses() {
+		AddressValidator validator = null;
+		List<String> lines = null;
+
+		try {
+			checkThreads();
+			validator = new AddressValidator(MainNetParams.get(), threads);
+
+			if(inventoryDirectory != null) {
+				List<File> files = WalletVerifier.listWalletFiles(inventoryDirectory);
+				int addresses = validator.loadInventory(files);
+				log(String.format("inventory: %d addresses of %d wallet files", addresses, files.size()));
+			}
+
+			lines = Files.readAllLines(Paths.get(validateFile));
+		}
+		catch(Exception e) {
+			return String.format("%s %s", VALIDATE_ERROR, e.getLocalizedMessage());
+		}
+
+		log(String.format("validating %d lines using %d threads ...", lines.size(), threads));
+		long start = System.currentTimeMillis();
+
+		try {
+			addressReport = validator.validateAll(lines);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return String.format("%s %s", VALIDATE_ERROR, "validation interrupted");
+		}
+
+		List<String> report = new ArrayList<>();
+		addressReport.getFailures().forEach(failure -> report.add(failure.toJsonLine()));
+
+		if(reportFile != null) {
+			FileUtility.saveToFile(report, reportFile);
+			log(String.format("validation report: %s", reportFile));
+		}
+		else {
+			report.forEach(this::log);
+		}
+
+		long total = addressReport.getTotal();
+		long failures = addressReport.getFailures().size();
+		long millis = System.currentTimeMillis() - start;
+
+		for(AddressValidator.Status status: AddressValidator.Status.values()) {
+			if(addressReport.getCount(status) > 0) {
+				log(String.format("%s: %d", status, addressReport.getCount(status)));
+			}
+		}
+
+		log(String.format("%d of %d addresses successfully validated in %d ms", total - failures, total, millis));
+
+		if(failures > 0) {
+			return String.format("%s %d of %d addresses failed", VALIDATE_ERROR, failures, total);
+		}
+
+		return String.format("%s %d addresses", VALIDATE_OK, total);
+	}
+
 	public String createWalletFile() {
 		PaperWallet pw = null;
 		
 		log("creating wallet ...");
 		
 		try {
-			pw = new PaperWallet(passPhrase, targetDirectory);
+			checkVanityPrefix(1);
+
+			if(bip85MasterFile != null) {
+				checkBip85Indexes(1);
+				byte [] seed = readBip85Master().deriveEntropy(PaperWallet.MNEMONIC_LENGTH_DEFAULT, bip85Index);
+				pw = new PaperWallet(WalletFactory.getInstance().newWallet(seed, passPhrase), targetDirectory);
+				log(String.format("bip85 child wallet: %d", bip85Index));
+			}
+			else if(vanityPrefix != null) {
+				pw = new PaperWallet(searchVanityWallet(), targetDirectory);
+			}
+			else {
+				pw = new PaperWallet(passPhrase, targetDirectory);
+			}
+
 			wallet = pw.getWallet();
 		}
 		catch(Exception e) {
 			return String.format("%s %s", CRATE_ERROR, e.getLocalizedMessage());
 		}
 		
+		WalletSnapshot snapshot = pw.getSnapshot();
 		String jsonFile = pw.getFile().getAbsolutePath();
-		FileUtility.saveToFile(pw.getJson().toString(2), jsonFile);
-		log("wallet in json format:\n" + pw.getJson().toString(2));
-		log("wallet in json format, single line:\n" + pw.getJson().toString());
+		FileUtility.saveToFile(snapshot.getJson(), jsonFile);
+		log("wallet in json format:\n" + snapshot.getJson());
+		log("wallet in json format, single line:\n" + snapshot.getCompactJson());
 		
 		log("wallet file successfully created");
 		log(String.format("wallet pass phrase: '%s'", pw.getPassPhrase()));
 		log(String.format("wallet file location: %s", jsonFile));
 
 		String html = WalletPageUtility.createHtml(pw);
-		byte [] qrCode = QrCodeUtility.contentToPngBytes(pw.getAddress(), 256);
+		byte [] qrCode = QrCodeUtility.contentToPngBytes(snapshot.getAddress(), 256);
 
 		String path = pw.getPathToFile();
 		String baseName = pw.getBaseName();
@@ -122,13 +318,174 @@ public class Application {
 		log(String.format("html wallet: %s", htmlFile));
 		log(String.format("address qr code: %s", pngFile));
 		
-		return String.format("%s %s", CREATE_OK, pw.getFile().getAbsolutePath());
+		return String.format("%s %s", CREATE_OK, jsonFile);
+	}
+
+	// child indexes of BIP85 wallets are non-negative ints
+	private void checkBip85Indexes(int wallets) {
+		if(bip85Index < 0) {
+			throw new IllegalArgumentException(String.format("bip85 index must not be negative: %d", bip85Index));
+		}
+
+		if((long) bip85Index + wallets - 1 > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("bip85 indexes %d to %d exceed the maximum index %d", bip85Index, (long) bip85Index + wallets - 1, Integer.MAX_VALUE));
+		}
+	}
+
+	// worker threads are never replaced silently by a default
+	private void checkThreads() {
+		if(threads < 1) {
+			throw new IllegalArgumentException(String.format("number of threads (%s) must be positive: %d", SWITCH_THREADS, threads));
+		}
+	}
+
+	// a vanity search creates a single random wallet
+	private void checkVanityPrefix(int wallets) {
+		if(vanityPrefix == null) {
+			return;
+		}
+
+		if(wallets > 1) {
+			throw new IllegalArgumentException(String.format("vanity prefix (%s) can not be combined with batch mode (%s %d)", SWITCH_VANITY_PREFIX, SWITCH_COUNT, wallets));
+		}
+
+		if(bip85MasterFile != null) {
+			throw new IllegalArgumentException(String.format("vanity prefix (%s) can not be combined with a bip85 master (%s)", SWITCH_VANITY_PREFIX, SWITCH_BIP85_MASTER));
+		}
+	}
+
+	private Wallet searchVanityWallet() throws Exception {
+		checkThreads();
+		VanitySearch search = new VanitySearch(vanityPrefix, threads);
+
+		log(String.format("searching address prefix '%s' using %d threads, one in %.0f wallets matches ...", vanityPrefix, search.getThreads(), search.getExpectedCandidates()));
+		VanitySearch.Result result = search.search(vanityMax, VanitySearch.PROGRESS_INTERVAL_DEFAULT, progress -> log(progress.toString()));
+		log(String.format("%d wallets tried in %d ms", result.getCandidates(), result.getMillis()));
+
+		if(!result.isFound()) {
+			throw new IllegalStateException(String.format("no address with prefix '%s' in %d wallets", vanityPrefix, result.getCandidates()));
+		}
+
+		Wallet vanityWallet = WalletFactory.getInstance().newWallet(result.getEntropy(), passPhrase);
+		String address = vanityWallet.getAddress().getAddressString();
+
+		if(!address.startsWith(vanityPrefix)) {
+			throw new IllegalStateException(String.format("address %s does not start with prefix '%s'", address, vanityPrefix));
+		}
+
+		log(String.format("vanity address: %s", address));
+		return vanityWallet;
+	}
+
+	public String createWalletFiles() {
+		BatchPipeline pipeline = null;
+		BatchPipeline.Result result = null;
+		long start = System.currentTimeMillis();
+
+		try {
+			checkThreads();
+			checkVanityPrefix(count);
+
+			if(bip85MasterFile != null) {
+				checkBip85Indexes(count);
+				IntFunction<byte[]> seeds = readBip85Master().seedSource(PaperWallet.MNEMONIC_LENGTH_DEFAULT, bip85Index);
+				pipeline = new BatchPipeline(passPhrase, targetDirectory, threads, seeds);
+				log(String.format("bip85 child wallets: %d to %d", bip85Index, bip85Index + count - 1));
+			}
+			else {
+				pipeline = new BatchPipeline(passPhrase, targetDirectory, threads);
+			}
+
+			log(String.format("creating %d wallets using %d threads per stage ...", count, threads));
+			result = pipeline.run(count);
+		}
+		catch(Exception e) {
+			return String.format("%s %s", CRATE_ERROR, e.getLocalizedMessage());
+		}
+
+		walletFiles = result.getFiles();
+		long millis = System.currentTimeMillis() - start;
+
+		log(String.format("%d wallet files successfully created in %d ms", walletFiles.size(), millis));
+		log(String.format("entropy: %d bytes served, %d from prefill buffer, %d reseeds", pipeline.getEntropyService().getBytesServed(), 
+				pipeline.getEntropyService().getBufferHits() * BatchPipeline.SEED_LENGTH, pipeline.getEntropyService().getReseeds()));
+		log(String.format("wallet pass phrase: '%s'", passPhrase == null ? "" : passPhrase));
+		log(String.format("wallet file location: %s", targetDirectory));
+
+		if(!result.getErrors().isEmpty()) {
+			result.getErrors().forEach(error -> log("creation failed for " + error));
+			return String.format("%s %d of %d wallets failed", CRATE_ERROR, result.getErrors().size(), count);
+		}
+
+		return String.format("%s %s", CREATE_OK, targetDirectory);
 	}
 	
 	public Wallet getWallet() {
 		return wallet;
 	}
 
+	public List<File> getWalletFiles() {
+		return walletFiles;
+	}
+
+	public List<VerificationResult> getVerificationResults() {
+		return verificationResults;
+	}
+
+	public AddressValidator.Report getAddressReport() {
+		return addressReport;
+	}
+
+	// pass phrase sources: command line, file, environment variable, console prompt
+	private String resolvePassPhrase() {
+		if(passPhrase != null) {
+			return passPhrase;
+		}
+
+		// the first line without its line end, leading and trailing spaces are kept
+		if(passPhraseFile != null) {
+			List<String> lines = FileUtility.readLines(passPhraseFile);
+
+			if(lines.isEmpty()) {
+				throw new IllegalArgumentException("pass phrase file is empty: " + passPhraseFile);
+			}
+
+			return lines.get(0);
+		}
+
+		if(passPhraseEnv != null) {
+			String value = System.getenv(passPhraseEnv);
+
+			if(value == null) {
+				throw new IllegalArgumentException("environment variable not set: " + passPhraseEnv);
+			}
+
+			return value;
+		}
+
+		Console console = System.console();
+
+		if(console != null) {
+			return new String(console.readPassword("wallet pass phrase: "));
+		}
+
+		Scanner scanner = new Scanner(System.in);
+
+		//  prompt for the user's name
+		System.out.print("wallet pass phrase: ");
+
+		// get their input as a String
+		String input = scanner.next();
+		scanner.close();
+
+		return input;
+	}
+
+	private Bip85 readBip85Master() throws MnemonicException {
+		String master = String.join(" ", FileUtility.readLines(bip85MasterFile));
+		return Bip85.fromString(master, MainNetParams.get());
+	}
+
 	private void parseCommandLine(String [] args) {
 		JCommander cmd = new JCommander(this, args);
 		cmd.setProgramName(COMMAND_NAME);
@@ -0,0 +1,310 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.Arrays;
+
+import org.bitcoinj.core.AddressFormatException;
+
+/**
+ *
+ * Base58Check.java : Base58Check codec for fixed length payloads
+ *
+ * Specialized for the two lengths of this tool: 25 bytes for addresses (version,
+ * hash160, checksum) and 82 bytes for extended keys (78 bytes BIP32 serialization,
+ * checksum). The number is held in 32 bit words and converted in groups of five
+ * base 58 digits (58^5 < 2^30), one long division per word and group instead of
+ * one per byte and digit. Each thread reuses its own scratch arrays, encode() into a
+ * char array and decode() into a byte array do not allocate.
+ *
+ */
+public final class Base58Check {
+
+	public static final int ADDRESS_LENGTH = 25;
+	public static final int EXTENDED_KEY_LENGTH = 82;
+	public static final int CHECKSUM_LENGTH = 4;
+
+	/** maximum number of characters of an encoded extended key */
+	public static final int MAX_ENCODED_LENGTH = 112;
+
+	// decode status codes
+	public static final int OK = 0;
+	public static final int INVALID_CHARACTER = 1;
+	public static final int INVALID_LENGTH = 2;
+	public static final int INVALID_CHECKSUM = 3;
+
+	private static final char [] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+	private static final int [] INDEXES = new int[128];
+
+	private static final long GROUP = 58L * 58 * 58 * 58 * 58;
+	private static final int GROUP_DIGITS = 5;
+	private static final long WORD_MASK = 0xFFFFFFFFL;
+	private static final int MAX_WORDS = (EXTENDED_KEY_LENGTH + 3) / 4;
+	private static final int MAX_DIGITS = 115;
+
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	static {
+		Arrays.fill(INDEXES, -1);
+
+		for(int i = 0; i < ALPHABET.length; i++) {
+			INDEXES[ALPHABET[i]] = i;
+		}
+	}
+
+	private Base58Check() {
+	}
+
+	/**
+	 * Encode bytes that already end with their checksum into the provided char array.
+	 *
+	 * @param byte[] data payload and checksum
+	 * @param int length number of bytes, at most 82
+	 * @param char[] out buffer for at least 112 characters
+	 *
+	 * @return int number of characters written
+	 *
+	 */
+	public static int encode(byte [] data, int length, char [] out) {
+		if(length > EXTENDED_KEY_LENGTH) {
+			throw new IllegalArgumentException("payload too long: " + length);
+		}
+
+		Scratch s = scratch.get();
+		long [] words = s.words;
+		char [] digits = s.digits;
+		int n = load(data, length, words);
+
+		int zeros = 0;
+		while(zeros < length && data[zeros] == 0) {
+			zeros++;
+		}
+
+		// digits are produced from the least significant end, five per division pass
+		int pos = MAX_DIGITS;
+		int start = 0;
+
+		while(start < n && words[start] == 0) {
+			start++;
+		}
+
+		while(start < n) {
+			long rem = 0;
+
+			for(int i = start; i < n; i++) {
+				long cur = (rem << 32) | words[i];
+				words[i] = cur / GROUP;
+				rem = cur - words[i] * GROUP;
+			}
+
+			while(start < n && words[start] == 0) {
+				start++;
+			}
+
+			for(int j = 0; j < GROUP_DIGITS; j++) {
+				digits[--pos] = ALPHABET[(int) (rem % 58)];
+				rem /= 58;
+			}
+		}
+
+		// drop the leading zero digits of the last group, one '1' per leading zero byte
+		while(pos < MAX_DIGITS && digits[pos] == ALPHABET[0]) {
+			pos++;
+		}
+
+		Arrays.fill(out, 0, zeros, ALPHABET[0]);
+		System.arraycopy(digits, pos, out, zeros, MAX_DIGITS - pos);
+
+		return zeros + MAX_DIGITS - pos;
+	}
+
+	/**
+	 * Return the Base58 string of bytes that already end with their checksum.
+	 *
+	 * @param byte[] data payload and checksum
+	 * @param int length number of bytes, at most 82
+	 *
+	 * @return String
+	 *
+	 */
+	public static String encode(byte [] data, int length) {
+		char [] chars = scratch.get().chars;
+		return new String(chars, 0, encode(data, length, chars));
+	}
+
+	/**
+	 * Append the checksum to the payload and return the Base58 string.
+	 *
+	 * @param byte[] payload 21 bytes for an address or 78 bytes for an extended key
+	 *
+	 * @return String
+	 *
+	 */
+	public static String encodeChecked(byte [] payload) {
+		byte [] bytes = scratch.get().bytes;
+		System.arraycopy(payload, 0, bytes, 0, payload.length);
+		Hash160.checksum(payload, 0, payload.length, bytes, payload.length);
+		return encode(bytes, payload.length + CHECKSUM_LENGTH);
+	}
+
+	/**
+	 * Decode a Base58 string of exactly length bytes and verify its checksum.
+	 *
+	 * @param CharSequence encoded
+	 * @param byte[] out buffer for the decoded bytes, including the checksum
+	 * @param int length expected number of bytes, 25 or 82
+	 *
+	 * @return int OK, INVALID_CHARACTER, INVALID_LENGTH or INVALID_CHECKSUM
+	 *
+	 */
+	public static int decode(CharSequence encoded, byte [] out, int length) {
+		if(length <= CHECKSUM_LENGTH || length > EXTENDED_KEY_LENGTH) {
+			throw new IllegalArgumentException("unsupported length: " + length);
+		}
+
+		int chars = encoded.length();
+
+		if(chars == 0 || chars > MAX_ENCODED_LENGTH) {
+			return INVALID_LENGTH;
+		}
+
+		Scratch s = scratch.get();
+		long [] words = s.words;
+		int n = (length + 3) / 4;
+		Arrays.fill(words, 0, n, 0);
+
+		int ones = 0;
+		while(ones < chars && encoded.charAt(ones) == ALPHABET[0]) {
+			ones++;
+		}
+
+		long group = 0;
+		long multiplier = 1;
+
+		for(int i = 0; i < chars; i++) {
+			char c = encoded.charAt(i);
+			int digit = c < 128 ? INDEXES[c] : -1;
+
+			if(digit < 0) {
+				return INVALID_CHARACTER;
+			}
+
+			group = group * 58 + digit;
+			multiplier *= 58;
+
+			if(multiplier == GROUP || i == chars - 1) {
+				// words = words * 58^k + group, k digits at once
+				long carry = group;
+
+				for(int j = n - 1; j >= 0; j--) {
+					long cur = words[j] * multiplier + carry;
+					words[j] = cur & WORD_MASK;
+					carry = cur >>> 32;
+				}
+
+				if(carry != 0) {
+					return INVALID_LENGTH;
+				}
+
+				group = 0;
+				multiplier = 1;
+			}
+		}
+
+		// the number must fit into length bytes
+		int pad = 4 * n - length;
+
+		if(pad > 0 && (words[0] >>> (32 - 8 * pad)) != 0) {
+			return INVALID_LENGTH;
+		}
+
+		for(int i = 0; i < length; i++) {
+			int k = i + pad;
+			out[i] = (byte) (words[k >>> 2] >>> (8 * (3 - (k & 3))));
+		}
+
+		// one '1' per leading zero byte, otherwise the string encodes another length
+		int zeros = 0;
+		while(zeros < length && out[zeros] == 0) {
+			zeros++;
+		}
+
+		if(zeros != ones) {
+			return INVALID_LENGTH;
+		}
+
+		byte [] checksum = s.checksum;
+		Hash160.checksum(out, 0, length - CHECKSUM_LENGTH, checksum, 0);
+
+		for(int i = 0; i < CHECKSUM_LENGTH; i++) {
+			if(checksum[i] != out[length - CHECKSUM_LENGTH + i]) {
+				return INVALID_CHECKSUM;
+			}
+		}
+
+		return OK;
+	}
+
+	/**
+	 * Decode a Base58Check string of a fixed length and return its payload without checksum.
+	 *
+	 * @param String encoded
+	 * @param int length expected number of bytes including the checksum, 25 or 82
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public static byte [] decodeChecked(String encoded, int length) throws AddressFormatException {
+		byte [] bytes = scratch.get().bytes;
+		int status = decode(encoded, bytes, length);
+
+		if(status != OK) {
+			throw new AddressFormatException(describe(status));
+		}
+
+		return Arrays.copyOf(bytes, length - CHECKSUM_LENGTH);
+	}
+
+	/**
+	 * Return a description of a decode status.
+	 *
+	 * @param int status
+	 *
+	 * @return String
+	 *
+	 */
+	public static String describe(int status) {
+		switch(status) {
+		case OK: return "ok";
+		case INVALID_CHARACTER: return "illegal character";
+		case INVALID_LENGTH: return "invalid length";
+		case INVALID_CHECKSUM: return "checksum does not validate";
+		default: return "unknown status " + status;
+		}
+	}
+
+	// big endian bytes into 32 bit words, zero padded at the most significant end
+	private static int load(byte [] data, int length, long [] words) {
+		int n = (length + 3) / 4;
+		int pad = 4 * n - length;
+		long word = 0;
+
+		for(int i = 0; i < 4 * n; i++) {
+			int b = i < pad ? 0 : data[i - pad] & 0xFF;
+			word = (word << 8) | b;
+
+			if((i & 3) == 3) {
+				words[i >>> 2] = word;
+				word = 0;
+			}
+		}
+
+		return n;
+	}
+
+	private static final class Scratch {
+		private final long [] words = new long[MAX_WORDS];
+		private final char [] digits = new char[MAX_DIGITS];
+		private final char [] chars = new char[MAX_DIGITS];
+		private final byte [] bytes = new byte[EXTENDED_KEY_LENGTH];
+		private final byte [] checksum = new byte[CHECKSUM_LENGTH];
+	}
+}
@@ -0,0 +1,312 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+/**
+ *
+ * BatchHash160.java : hash160 of compressed public keys, several keys per pass
+ *
+ * A 33 byte compressed public key fits into a single SHA-256 block and its 32 byte
+ * digest into a single RIPEMD-160 block. The keys of a lane group are hashed together:
+ * every round runs as one loop over the lanes on int arrays in structure of arrays
+ * layout, which leaves independent work for the CPU and a shape the JIT may
+ * compile to SIMD instructions.
+ * Inputs of other lengths and the keys left over after the last full lane group
+ * are hashed one at a time with Hash160, which is also the path for single keys.
+ * The project targets Java 8, so the lanes are plain int loops rather than the
+ * incubating JDK Vector API.
+ *
+ */
+public final class BatchHash160 {
+
+	public static final int LANES = 8;
+	public static final int KEY_LENGTH = 33;
+
+	private static final int [] SHA256_K = {
+		0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+		0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+		0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+		0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+		0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+		0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+		0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+		0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+	};
+
+	private static final int [] SHA256_IV = {
+		0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+	};
+
+	private static final int [] RIPEMD160_IV = { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476, 0xc3d2e1f0 };
+
+	private static final int [] RIPEMD160_K_LEFT = { 0x00000000, 0x5a827999, 0x6ed9eba1, 0x8f1bbcdc, 0xa953fd4e };
+	private static final int [] RIPEMD160_K_RIGHT = { 0x50a28be6, 0x5c4dd124, 0x6d703ef3, 0x7a6d76e9, 0x00000000 };
+
+	private static final int [] RIPEMD160_R_LEFT = {
+		0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+		7, 4, 13, 1, 10, 6, 15, 3, 12, 0, 9, 5, 2, 14, 11, 8,
+		3, 10, 14, 4, 9, 15, 8, 1, 2, 7, 0, 6, 13, 11, 5, 12,
+		1, 9, 11, 10, 0, 8, 12, 4, 13, 3, 7, 15, 14, 5, 6, 2,
+		4, 0, 5, 9, 7, 12, 2, 10, 14, 1, 3, 8, 11, 6, 15, 13
+	};
+
+	private static final int [] RIPEMD160_R_RIGHT = {
+		5, 14, 7, 0, 9, 2, 11, 4, 13, 6, 15, 8, 1, 10, 3, 12,
+		6, 11, 3, 7, 0, 13, 5, 10, 14, 15, 8, 12, 4, 9, 1, 2,
+		15, 5, 1, 3, 7, 14, 6, 9, 11, 8, 12, 2, 10, 0, 4, 13,
+		8, 6, 4, 1, 3, 11, 15, 0, 5, 12, 2, 13, 9, 7, 10, 14,
+		12, 15, 10, 4, 1, 5, 8, 7, 6, 2, 13, 14, 0, 3, 9, 11
+	};
+
+	private static final int [] RIPEMD160_S_LEFT = {
+		11, 14, 15, 12, 5, 8, 7, 9, 11, 13, 14, 15, 6, 7, 9, 8,
+		7, 6, 8, 13, 11, 9, 7, 15, 7, 12, 15, 9, 11, 7, 13, 12,
+		11, 13, 6, 7, 14, 9, 13, 15, 14, 8, 13, 6, 5, 12, 7, 5,
+		11, 12, 14, 15, 14, 15, 9, 8, 9, 14, 5, 6, 8, 6, 5, 12,
+		9, 15, 5, 11, 6, 8, 13, 12, 5, 12, 13, 14, 11, 8, 5, 6
+	};
+
+	private static final int [] RIPEMD160_S_RIGHT = {
+		8, 9, 9, 11, 13, 15, 15, 5, 7, 7, 8, 11, 14, 14, 12, 6,
+		9, 13, 15, 7, 12, 8, 9, 11, 7, 7, 12, 7, 6, 15, 13, 11,
+		9, 7, 15, 11, 8, 6, 6, 14, 12, 13, 5, 14, 13, 13, 7, 5,
+		15, 5, 8, 11, 14, 14, 6, 14, 6, 9, 12, 9, 12, 5, 15, 8,
+		8, 5, 12, 9, 12, 5, 14, 6, 8, 13, 6, 5, 15, 13, 11, 11
+	};
+
+	private static final ThreadLocal<Lanes> lanes = ThreadLocal.withInitial(Lanes::new);
+
+	private BatchHash160() {
+	}
+
+	/**
+	 * Write hash160 of each input into the corresponding 20 byte output array.
+	 *
+	 * @param byte[][] data inputs, usually compressed public keys
+	 * @param byte[][] hashes output arrays of at least 20 bytes, one per input
+	 *
+	 */
+	public static void hash160(byte [][] data, byte [][] hashes) {
+		if(hashes.length < data.length) {
+			throw new IllegalArgumentException(String.format("%d inputs but %d output arrays", data.length, hashes.length));
+		}
+
+		Lanes group = lanes.get();
+		int [] index = group.index;
+		int filled = 0;
+
+		for(int i = 0; i < data.length; i++) {
+			if(data[i].length != KEY_LENGTH) {
+				Hash160.hash160(data[i], 0, data[i].length, hashes[i], 0);
+				continue;
+			}
+
+			index[filled++] = i;
+
+			if(filled == LANES) {
+				group.hash(data, hashes);
+				filled = 0;
+			}
+		}
+
+		for(int i = 0; i < filled; i++) {
+			byte [] key = data[index[i]];
+			Hash160.hash160(key, 0, key.length, hashes[index[i]], 0);
+		}
+	}
+
+	/**
+	 * Return hash160 of each input.
+	 *
+	 * @param byte[][] data inputs, usually compressed public keys
+	 *
+	 * @return byte[][] 20 byte hashes
+	 *
+	 */
+	public static byte [][] hash160(byte [][] data) {
+		byte [][] hashes = new byte[data.length][Hash160.HASH_LENGTH];
+		hash160(data, hashes);
+		return hashes;
+	}
+
+	/**
+	 * Working arrays of one thread, word i of lane l at index i * LANES + l.
+	 */
+	private static final class Lanes {
+		private final int [] index = new int[LANES];
+		private final int [] w = new int[64 * LANES];
+		private final int [] x = new int[16 * LANES];
+		private final int [][] state = new int[8][LANES];
+		private final int [][] left = new int[5][LANES];
+		private final int [][] right = new int[5][LANES];
+
+		void hash(byte [][] data, byte [][] hashes) {
+			load(data);
+			sha256();
+			ripemd160();
+			store(hashes);
+		}
+
+		// single SHA-256 block: 33 key bytes, 0x80, zeros, bit length 264
+		private void load(byte [][] data) {
+			for(int l = 0; l < LANES; l++) {
+				byte [] key = data[index[l]];
+
+				for(int i = 0; i < 8; i++) {
+					int o = 4 * i;
+					w[i * LANES + l] = (key[o] << 24) | ((key[o + 1] & 0xff) << 16) | ((key[o + 2] & 0xff) << 8) | (key[o + 3] & 0xff);
+				}
+
+				w[8 * LANES + l] = (key[32] << 24) | 0x00800000;
+			}
+
+			for(int i = 9 * LANES; i < 15 * LANES; i++) {
+				w[i] = 0;
+			}
+
+			for(int l = 0; l < LANES; l++) {
+				w[15 * LANES + l] = 8 * KEY_LENGTH;
+			}
+		}
+
+		private void sha256() {
+			for(int t = 16; t < 64; t++) {
+				int o = t * LANES;
+
+				for(int l = 0; l < LANES; l++) {
+					int w15 = w[o - 15 * LANES + l];
+					int w2 = w[o - 2 * LANES + l];
+					int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+					int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+					w[o + l] = w[o - 16 * LANES + l] + s0 + w[o - 7 * LANES + l] + s1;
+				}
+			}
+
+			for(int i = 0; i < 8; i++) {
+				for(int l = 0; l < LANES; l++) {
+					state[i][l] = SHA256_IV[i];
+				}
+			}
+
+			int [] a = state[0], b = state[1], c = state[2], d = state[3];
+			int [] e = state[4], f = state[5], g = state[6], h = state[7];
+
+			for(int t = 0; t < 64; t++) {
+				int o = t * LANES;
+				int k = SHA256_K[t];
+
+				for(int l = 0; l < LANES; l++) {
+					int el = e[l];
+					int al = a[l];
+					int t1 = h[l] + (Integer.rotateRight(el, 6) ^ Integer.rotateRight(el, 11) ^ Integer.rotateRight(el, 25)) + ((el & f[l]) ^ (~el & g[l])) + k + w[o + l];
+					int t2 = (Integer.rotateRight(al, 2) ^ Integer.rotateRight(al, 13) ^ Integer.rotateRight(al, 22)) + ((al & b[l]) ^ (al & c[l]) ^ (b[l] & c[l]));
+					h[l] = t1 + t2;
+					d[l] += t1;
+				}
+
+				// rename instead of moving: new a is in h, new e in d
+				int [] tmp = h;
+				h = g; g = f; f = e; e = d;
+				d = c; c = b; b = a; a = tmp;
+			}
+
+			// after 64 rounds the names are back on their original arrays
+			for(int i = 0; i < 8; i++) {
+				int [] s = state[i];
+				int iv = SHA256_IV[i];
+
+				for(int l = 0; l < LANES; l++) {
+					s[l] += iv;
+				}
+			}
+		}
+
+		// single RIPEMD-160 block: 32 digest bytes as little endian words, 0x80, zeros, bit length 256
+		private void ripemd160() {
+			for(int i = 0; i < 8; i++) {
+				int [] s = state[i];
+
+				for(int l = 0; l < LANES; l++) {
+					x[i * LANES + l] = Integer.reverseBytes(s[l]);
+				}
+			}
+
+			for(int l = 0; l < LANES; l++) {
+				x[8 * LANES + l] = 0x80;
+				x[14 * LANES + l] = 256;
+			}
+
+			for(int i = 9 * LANES; i < 14 * LANES; i++) {
+				x[i] = 0;
+			}
+
+			for(int i = 15 * LANES; i < 16 * LANES; i++) {
+				x[i] = 0;
+			}
+
+			for(int i = 0; i < 5; i++) {
+				for(int l = 0; l < LANES; l++) {
+					left[i][l] = RIPEMD160_IV[i];
+					right[i][l] = RIPEMD160_IV[i];
+				}
+			}
+
+			line(left, RIPEMD160_R_LEFT, RIPEMD160_S_LEFT, RIPEMD160_K_LEFT, false);
+			line(right, RIPEMD160_R_RIGHT, RIPEMD160_S_RIGHT, RIPEMD160_K_RIGHT, true);
+
+			// after 80 steps the names are back on their original arrays
+			for(int l = 0; l < LANES; l++) {
+				state[0][l] = RIPEMD160_IV[1] + left[2][l] + right[3][l];
+				state[1][l] = RIPEMD160_IV[2] + left[3][l] + right[4][l];
+				state[2][l] = RIPEMD160_IV[3] + left[4][l] + right[0][l];
+				state[3][l] = RIPEMD160_IV[4] + left[0][l] + right[1][l];
+				state[4][l] = RIPEMD160_IV[0] + left[1][l] + right[2][l];
+			}
+		}
+
+		// 80 steps of one line, f1 .. f5 on the left line and f5 .. f1 on the right line
+		private void line(int [][] v, int [] r, int [] s, int [] k, boolean reverse) {
+			int [] a = v[0], b = v[1], c = v[2], d = v[3], e = v[4];
+
+			for(int j = 0; j < 80; j++) {
+				int round = j / 16;
+				int function = reverse ? 4 - round : round;
+				int o = r[j] * LANES;
+				int shift = s[j];
+				int constant = k[round];
+
+				for(int l = 0; l < LANES; l++) {
+					int bl = b[l], cl = c[l], dl = d[l];
+					int f;
+
+					switch(function) {
+					case 0: f = bl ^ cl ^ dl; break;
+					case 1: f = (bl & cl) | (~bl & dl); break;
+					case 2: f = (bl | ~cl) ^ dl; break;
+					case 3: f = (bl & dl) | (cl & ~dl); break;
+					default: f = bl ^ (cl | ~dl); break;
+					}
+
+					a[l] = Integer.rotateLeft(a[l] + f + x[o + l] + constant, shift) + e[l];
+					c[l] = Integer.rotateLeft(cl, 10);
+				}
+
+				// new (a, b, c, d, e) = (e, t, b, rol(c, 10), d), t was written to a
+				int [] t = a;
+				a = e; e = d; d = c; c = b; b = t;
+			}
+		}
+
+		private void store(byte [][] hashes) {
+			for(int l = 0; l < LANES; l++) {
+				byte [] out = hashes[index[l]];
+
+				for(int i = 0; i < 5; i++) {
+					int word = state[i][l];
+					out[4 * i] = (byte) word;
+					out[4 * i + 1] = (byte) (word >>> 8);
+					out[4 * i + 2] = (byte) (word >>> 16);
+					out[4 * i + 3] = (byte) (word >>> 24);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.generators.HKDFBytesGenerator;
+import org.spongycastle.crypto.params.HKDFParameters;
+
+/**
+ *
+ * BatchKey.java : pass phrase derived master key shared by the wallets of a batch
+ *
+ * The master key is derived once with PBKDF2 over a random batch salt. Each wallet
+ * encrypts its seed with its own subkey, derived from the master key with HKDF-SHA256
+ * and a random per wallet salt. Used by the wallet JSON format version 2.0.
+ *
+ */
+public class BatchKey {
+
+	public static final int ITERATION_COUNT = 65536;
+	public static final int KEY_STRENGTH = 256;
+	public static final int SALT_LENGTH = 16;
+
+	private static final byte [] HKDF_INFO = "bitcoin paper wallet seed".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte [] kdfSalt;
+	private final int iterationCount;
+	private final byte [] masterKey;
+
+	/**
+	 * Constructor for a new batch key with a random batch salt.
+	 *
+	 * @param String passPhrase pass phrase of the batch
+	 *
+	 */
+	public BatchKey(String passPhrase) throws NoSuchAlgorithmException {
+		this(passPhrase, null, ITERATION_COUNT);
+	}
+
+	/**
+	 * Constructor for the batch key of an existing batch.
+	 *
+	 * @param String passPhrase pass phrase of the batch
+	 * @param byte[] kdfSalt batch salt, a random salt is created if null
+	 * @param int iterationCount PBKDF2 iteration count
+	 *
+	 */
+	public BatchKey(String passPhrase, byte [] kdfSalt, int iterationCount) throws NoSuchAlgorithmException {
+		this(passPhrase, kdfSalt, iterationCount, null);
+	}
+
+	/**
+	 * Constructor for the batch key of an existing batch, the master key is looked up in
+	 * the provided cache, e.g. when verifying many wallet files of the same batch.
+	 *
+	 * @param String passPhrase pass phrase of the batch
+	 * @param byte[] kdfSalt batch salt, a random salt is created if null
+	 * @param int iterationCount PBKDF2 iteration count
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 *
+	 */
+	public BatchKey(String passPhrase, byte [] kdfSalt, int iterationCount, DerivedKeyCache cache) throws NoSuchAlgorithmException {
+		if(passPhrase == null || passPhrase.isEmpty()) {
+			throw new IllegalArgumentException("batch key requires a non empty pass phrase");
+		}
+
+		if(iterationCount < 1) {
+			throw new IllegalArgumentException("iteration count must be positive");
+		}
+
+		this.kdfSalt = kdfSalt != null ? kdfSalt.clone() : newSalt();
+		this.iterationCount = iterationCount;
+
+		masterKey = AesUtility.deriveKey(passPhrase, this.kdfSalt, iterationCount, KEY_STRENGTH, cache);
+	}
+
+	/**
+	 * Return a new random per wallet salt.
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public byte [] newSalt() {
+		byte [] salt = new byte[SALT_LENGTH];
+		EntropyService.getInstance().nextBytes(salt);
+		return salt;
+	}
+
+	/**
+	 * Derive the AES key of a wallet from the master key.
+	 *
+	 * @param byte[] walletSalt per wallet salt
+	 *
+	 * @return byte[] 256 bit key
+	 *
+	 */
+	public byte [] deriveWalletKey(byte [] walletSalt) {
+		HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+		hkdf.init(new HKDFParameters(masterKey, walletSalt, HKDF_INFO));
+
+		byte [] key = new byte[KEY_STRENGTH / 8];
+		hkdf.generateBytes(key, 0, key.length);
+
+		return key;
+	}
+
+	public byte [] getKdfSalt() {
+		return kdfSalt.clone();
+	}
+
+	public int getIterationCount() {
+		return iterationCount;
+	}
+
+	/**
+	 * Overwrite the master key, the batch key can no longer be used afterwards.
+	 */
+	public void destroy() {
+		Arrays.fill(masterKey, (byte) 0);
+	}
+}
@@ -0,0 +1,343 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.File;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ *
+ * BatchPipeline.java : creates many paper wallets in a single JVM
+ *
+ * Seed generation, BIP44 derivation, encryption, rendering and writing of
+ * the output files run as separate stages connected by bounded queues.
+ * Each stage is served by its own set of worker threads. All wallets of a
+ * batch share one pass phrase: its PBKDF2 master key is derived once per run
+ * and each wallet is encrypted with its own subkey (wallet file version 2.0).
+ *
+ */
+public class BatchPipeline {
+
+	public static final int THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static final int QUEUE_SLOTS_PER_THREAD = 2;
+	public static final int SEED_LENGTH = (PaperWallet.MNEMONIC_LENGTH_DEFAULT / 3) * 4;
+
+	// interval of the liveness checks of the workers while waiting for results
+	private static final long POLL_MILLIS = 1000;
+
+	// marks the end of the work items in a stage queue
+	private static final Item END = new Item(-1);
+
+	private final String passPhrase;
+	private final String pathToFile;
+	private final int threads;
+	private final IntFunction<byte[]> seedSource;
+
+	private final WalletFactory factory;
+	private final EntropyService entropy = new EntropyService();
+	private final AtomicReference<Error> failure = new AtomicReference<>();
+	private BatchKey batchKey = null;
+
+	/**
+	 * Constructor for a batch pipeline.
+	 *
+	 * @param String passPhrase pass phrase for all wallet files of the batch
+	 * @param String pathToFile target directory for the wallet files
+	 * @param int threads number of worker threads per cpu bound stage (at least 1)
+	 *
+	 */
+	public BatchPipeline(String passPhrase, String pathToFile, int threads) {
+		this(passPhrase, pathToFile, threads, null);
+	}
+
+	/**
+	 * Constructor for a batch pipeline with deterministic seeds, e.g. BIP85 child wallets.
+	 *
+	 * @param String passPhrase pass phrase for all wallet files of the batch
+	 * @param String pathToFile target directory for the wallet files
+	 * @param int threads number of worker threads per cpu bound stage (at least 1)
+	 * @param IntFunction<byte[]> seedSource seed of the i-th wallet of a run, random seeds if null
+	 *
+	 */
+	public BatchPipeline(String passPhrase, String pathToFile, int threads, IntFunction<byte[]> seedSource) {
+		if(threads < 1) {
+			throw new IllegalArgumentException(String.format("number of threads must be positive: %d", threads));
+		}
+
+		this.passPhrase = passPhrase == null ? "" : passPhrase;
+		this.pathToFile = pathToFile;
+		this.threads = threads;
+		this.seedSource = seedSource;
+
+		factory = WalletFactory.getInstance();
+	}
+
+	/**
+	 * Create the specified number of paper wallets. Exceptions of single
+	 * wallets are reported in the result, errors of the VM abort the run.
+	 *
+	 * @param int count number of wallets to create
+	 *
+	 * @return Result
+	 *
+	 */
+	public Result run(int count) throws InterruptedException, NoSuchAlgorithmException {
+		int capacity = threads * QUEUE_SLOTS_PER_THREAD;
+		BlockingQueue<Item> seeds = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Item> wallets = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Item> encrypted = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Item> rendered = new ArrayBlockingQueue<>(capacity);
+		BlockingQueue<Item> done = new LinkedBlockingQueue<>();
+
+		List<Runnable> workers = new ArrayList<>();
+		workers.add(() -> generateSeeds(count, seeds));
+		addStage(workers, threads, seeds, wallets, this::deriveWallet);
+		addStage(workers, threads, wallets, encrypted, this::encryptWallet);
+		addStage(workers, threads, encrypted, rendered, this::renderWallet);
+		addStage(workers, Math.max(1, threads / 2), rendered, done, this::writeWallet);
+
+		batchKey = passPhrase.isEmpty() ? null : new BatchKey(passPhrase);
+
+		// the seed stage takes its random seeds from a buffer filled in the background
+		if(seedSource == null) {
+			entropy.startPrefill(SEED_LENGTH, capacity);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+		List<Future<?>> futures = new ArrayList<>();
+		workers.forEach(worker -> futures.add(executor.submit(worker)));
+
+		Result result = new Result();
+
+		try {
+			for(Item item = done.poll(POLL_MILLIS, TimeUnit.MILLISECONDS); item != END; item = done.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				checkFailure();
+
+				if(item != null) {
+					result.add(item);
+				}
+				else {
+					checkWorkers(futures, done);
+				}
+			}
+
+			// the worker hit by an error still closes its stage
+			checkFailure();
+		}
+		finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+
+			if(batchKey != null) {
+				batchKey.destroy();
+			}
+
+			entropy.stopPrefill();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the entropy service providing the wallet seeds of this pipeline.
+	 *
+	 * @return EntropyService
+	 *
+	 */
+	public EntropyService getEntropyService() {
+		return entropy;
+	}
+
+	private void generateSeeds(int count, BlockingQueue<Item> out) {
+		try {
+			for(int i = 0; i < count; i++) {
+				Item item = new Item(i);
+
+				try {
+					item.seed = seedSource != null ? seedSource.apply(i) : entropy.nextSeed(SEED_LENGTH);
+				}
+				catch (RuntimeException e) {
+					item.error = e;
+				}
+				catch (Error e) {
+					failure.compareAndSet(null, e);
+					throw e;
+				}
+
+				out.put(item);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			putEnd(out);
+		}
+	}
+
+	private void deriveWallet(Item item) throws Exception {
+		Wallet wallet = factory.newWallet(item.seed, passPhrase);
+		item.paperWallet = new PaperWallet(wallet, pathToFile, batchKey);
+		item.seed = null;
+	}
+
+	private void encryptWallet(Item item) {
+		item.json = item.paperWallet.getSnapshot().getJson();
+	}
+
+	private void renderWallet(Item item) {
+		item.html = WalletPageUtility.createHtml(item.paperWallet);
+		item.png = QrCodeUtility.contentToPngBytes(item.paperWallet.getSnapshot().getAddress(), 256);
+	}
+
+	private void writeWallet(Item item) {
+		PaperWallet pw = item.paperWallet;
+		String path = pw.getPathToFile();
+		String baseName = pw.getBaseName();
+
+		item.file = pw.getFile();
+		FileUtility.saveToFile(item.json, item.file.getAbsolutePath());
+		FileUtility.saveToFile(item.html, String.format("%s%s%s.%s", path, File.separator, baseName, Application.EXT_HTML));
+		FileUtility.saveToFile(item.png, String.format("%s%s%s.%s", path, File.separator, baseName, Application.EXT_PNG));
+
+		item.paperWallet = null;
+		item.json = null;
+		item.html = null;
+		item.png = null;
+	}
+
+	private void addStage(List<Runnable> workers, int count, BlockingQueue<Item> in, BlockingQueue<Item> out, Task task) {
+		AtomicInteger active = new AtomicInteger(count);
+
+		for(int i = 0; i < count; i++) {
+			workers.add(() -> runStage(in, out, task, active));
+		}
+	}
+
+	private void runStage(BlockingQueue<Item> in, BlockingQueue<Item> out, Task task, AtomicInteger active) {
+		try {
+			for(Item item = in.take(); item != END; item = in.take()) {
+				if(item.error == null) {
+					try {
+						task.process(item);
+					}
+					catch (Exception e) {
+						item.error = e;
+					}
+					catch (Error e) {
+						failure.compareAndSet(null, e);
+						throw e;
+					}
+				}
+
+				out.put(item);
+			}
+
+			// hand the end marker on to the siblings
+			in.put(END);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// the last worker closes the next stage, also if a worker fails
+			if(active.decrementAndGet() == 0) {
+				putEnd(out);
+			}
+		}
+	}
+
+	private static void putEnd(BlockingQueue<Item> out) {
+		try {
+			out.put(END);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// out of memory and other errors of the VM are no per wallet failures
+	private void checkFailure() {
+		Error error = failure.get();
+
+		if(error != null) {
+			throw error;
+		}
+	}
+
+	// a worker that died or a pipeline that stopped without end marker would block run() forever
+	private static void checkWorkers(List<Future<?>> futures, BlockingQueue<Item> done) throws InterruptedException {
+		for(Future<?> future: futures) {
+			if(future.isDone()) {
+				try {
+					future.get();
+				}
+				catch (ExecutionException e) {
+					throw new IllegalStateException("batch pipeline worker failed: " + e.getCause(), e.getCause());
+				}
+			}
+		}
+
+		if(futures.stream().allMatch(Future::isDone) && done.isEmpty()) {
+			throw new IllegalStateException("batch pipeline stopped without completing the batch");
+		}
+	}
+
+	@FunctionalInterface
+	private interface Task {
+		void process(Item item) throws Exception;
+	}
+
+	private static class Item {
+		private final int index;
+
+		private byte[] seed;
+		private PaperWallet paperWallet;
+		private String json;
+		private String html;
+		private byte[] png;
+		private File file;
+		private Exception error;
+
+		private Item(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Outcome of a batch run: the created wallet files and the errors of failed wallets.
+	 */
+	public static class Result {
+		private final List<File> files = new ArrayList<>();
+		private final List<String> errors = new ArrayList<>();
+
+		private void add(Item item) {
+			if(item.error == null) {
+				files.add(item.file);
+			}
+			else {
+				errors.add(String.format("wallet %d: %s", item.index, item.error.getMessage() != null ? item.error.getMessage() : item.error));
+			}
+		}
+
+		public List<File> getFiles() {
+			return Collections.unmodifiableList(files);
+		}
+
+		public List<String> getErrors() {
+			return Collections.unmodifiableList(errors);
+		}
+	}
+}
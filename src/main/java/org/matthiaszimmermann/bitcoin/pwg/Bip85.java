@@ -0,0 +1,179 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDUtils;
+import org.bitcoinj.crypto.MnemonicException;
+
+/**
+ *
+ * Bip85.java : BIP85 deterministic entropy for child wallets of a master key
+ *
+ * https://github.com/bitcoin/bips/blob/master/bip-0085.mediawiki
+ *
+ * The BIP39 entropy of child wallet i is derived from the key at
+ * m/83696968'/39'/0'/{words}'/{i}' of the master key. The parent key of each
+ * word count is derived once, each child then takes two HMAC-SHA512 calls. Any
+ * child wallet can be recreated from the master key and its index.
+ *
+ */
+public final class Bip85 {
+
+	public static final int PURPOSE = 83696968;
+	public static final int APPLICATION_BIP39 = 39;
+	public static final int LANGUAGE_ENGLISH = 0;
+
+	private static final byte [] ENTROPY_KEY = "bip-entropy-from-k".getBytes(StandardCharsets.US_ASCII);
+	private static final BigInteger CURVE_ORDER = ECKey.CURVE.getN();
+
+	private final DeterministicKey master;
+	private final Map<Integer, DeterministicKey> parents = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor for the children of the provided master key.
+	 *
+	 * @param DeterministicKey master BIP32 root key with private key
+	 *
+	 */
+	public Bip85(DeterministicKey master) {
+		if(!master.hasPrivKey()) {
+			throw new IllegalArgumentException("BIP85 requires a master key with private key");
+		}
+
+		this.master = master;
+	}
+
+	/**
+	 * Return the children of the master key of a BIP39 mnemonic.
+	 *
+	 * @param List<String> words master mnemonic
+	 * @param String passphrase optional BIP39 passphrase
+	 *
+	 * @return Bip85
+	 *
+	 */
+	public static Bip85 fromMnemonic(List<String> words, String passphrase) throws MnemonicException {
+		Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT).toEntropy(words);
+		byte [] seed = Pbkdf2.bip39Seed(words, passphrase == null ? "" : passphrase);
+		return new Bip85(HDKeyDerivation.createMasterPrivateKey(seed));
+	}
+
+	/**
+	 * Return the children of a master key provided as xprv or as (possibly abbreviated) BIP39 mnemonic.
+	 *
+	 * @param String data xprv or mnemonic
+	 * @param NetworkParameters params
+	 *
+	 * @return Bip85
+	 *
+	 */
+	public static Bip85 fromString(String data, NetworkParameters params) throws MnemonicException {
+		String master = data.trim();
+
+		if(master.startsWith("xprv") || master.startsWith("tprv")) {
+			return new Bip85(DeterministicKey.deserializeB58(master, params));
+		}
+
+		Wordlist wordlist = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT);
+		List<String> words = new ArrayList<>();
+
+		for(String typed: master.split("\\s+")) {
+			String word = wordlist.match(typed);
+			words.add(word != null ? word : typed);
+		}
+
+		return fromMnemonic(words, "");
+	}
+
+	/**
+	 * Derive the BIP39 entropy of a child wallet.
+	 *
+	 * @param int words mnemonic length of the child wallet (12, 18 or 24)
+	 * @param int index child index
+	 *
+	 * @return byte[] 16, 24 or 32 bytes of entropy
+	 *
+	 */
+	public byte [] deriveEntropy(int words, int index) {
+		if(words != 12 && words != 18 && words != 24) {
+			throw new IllegalArgumentException("unsupported number of words: " + words);
+		}
+
+		if(index < 0) {
+			throw new IllegalArgumentException("child index must not be negative: " + index);
+		}
+
+		DeterministicKey parent = parents.computeIfAbsent(words, this::deriveParent);
+
+		// hardened BIP32 derivation of the private key only, the child public key is not needed
+		byte [] data = ByteBuffer.allocate(37).put(parent.getPrivKeyBytes33()).putInt(index | ChildNumber.HARDENED_BIT).array();
+		byte [] i = HDUtils.hmacSha512(parent.getChainCode(), data);
+		BigInteger il = new BigInteger(1, Arrays.copyOfRange(i, 0, 32));
+		BigInteger k = il.add(parent.getPrivKey()).mod(CURVE_ORDER);
+
+		if(il.compareTo(CURVE_ORDER) >= 0 || k.signum() == 0) {
+			throw new IllegalStateException("invalid BIP32 child key for index " + index);
+		}
+
+		byte [] childKey = Utils.bigIntegerToBytes(k, 32);
+		byte [] entropy = HDUtils.hmacSha512(ENTROPY_KEY, childKey);
+		Arrays.fill(childKey, (byte) 0);
+		Arrays.fill(i, (byte) 0);
+
+		byte [] result = Arrays.copyOf(entropy, (words / 3) * 4);
+		Arrays.fill(entropy, (byte) 0);
+
+		return result;
+	}
+
+	/**
+	 * Derive the mnemonic of a child wallet.
+	 *
+	 * @param int words mnemonic length of the child wallet (12, 18 or 24)
+	 * @param int index child index
+	 *
+	 * @return List<String>
+	 *
+	 */
+	public List<String> deriveMnemonic(int words, int index) throws MnemonicException.MnemonicLengthException {
+		return Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT).toMnemonic(deriveEntropy(words, index));
+	}
+
+	/**
+	 * Return a seed source for a range of child wallets, seed i is the entropy of child firstIndex + i.
+	 * Disjoint ranges may be assigned to different threads or nodes.
+	 *
+	 * @param int words mnemonic length of the child wallets
+	 * @param int firstIndex child index of the first seed
+	 *
+	 * @return IntFunction<byte[]>
+	 *
+	 */
+	public IntFunction<byte []> seedSource(int words, int firstIndex) {
+		return i -> deriveEntropy(words, Math.addExact(firstIndex, i));
+	}
+
+	private DeterministicKey deriveParent(int words) {
+		DeterministicKey key = master;
+
+		for(int child: new int [] { PURPOSE, APPLICATION_BIP39, LANGUAGE_ENGLISH, words }) {
+			key = HDKeyDerivation.deriveChildKey(key, new ChildNumber(child, true));
+		}
+
+		return key;
+	}
+}
@@ -1,8 +1,13 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.crypto.DeterministicKey;
-import org.bitcoinj.crypto.HDKeyDerivation;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -16,11 +21,14 @@ import org.json.JSONObject;
 public class Chain {
 
     private DeterministicKey cKey = null;
+    private DerivationEngine engine = null;
     private boolean isReceive;
 
     private String strPath = null;
     private NetworkParameters params = null;
 
+    private final AddressCache cache = new AddressCache();
+
     @SuppressWarnings("unused")
 	private Chain() { }
 
@@ -33,11 +41,24 @@ public class Chain {
      *
      */
     public Chain(NetworkParameters params, DeterministicKey aKey, boolean isReceive) {
+        this(params, new DerivationEngine(aKey), isReceive);
+    }
+
+    /**
+     * Constructor for a chain derived with the engine of its account.
+     *
+     * @param NetworkParameters params
+     * @param DerivationEngine accountEngine derivation engine for the account key
+     * @param boolean isReceive this is the receive chain
+     *
+     */
+    Chain(NetworkParameters params, DerivationEngine accountEngine, boolean isReceive) {
 
         this.params = params;
         this.isReceive = isReceive;
         int chain = isReceive ? 0 : 1;
-        cKey = HDKeyDerivation.deriveChildKey(aKey, chain);
+        engine = accountEngine.deriveEngine(chain, false);
+        cKey = engine.getParent();
 
         strPath = cKey.getPathAsString();
     }
@@ -53,12 +74,92 @@ public class Chain {
 
     /**
      * Return Address at provided index into chain.
+     * Addresses are derived once and then served from the cache of this chain.
      *
      * @return Address
 	 *
      */
     public Address getAddressAt(int addrIdx) {
-        return new Address(params, cKey, addrIdx);
+        return cache.get(addrIdx, this::newAddress);
+    }
+
+    /**
+     * Return number of address lookups served from the cache.
+     *
+     * @return long
+     *
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * Return number of address lookups that required a derivation.
+     *
+     * @return long
+     *
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * Return the addresses for the index range [from, from + count) as an ordered stream.
+     * The stream is backed by a splittable spliterator, use parallel() to derive the range on all cores.
+     * Addresses of a range are not added to the cache of this chain.
+     *
+     * @param int from index of first address
+     * @param int count number of addresses
+     *
+     * @return Stream<Address>
+     *
+     */
+    public Stream<Address> addresses(int from, int count) {
+
+        if(from < 0 || count < 0 || count > Integer.MAX_VALUE - from) {
+            throw new IllegalArgumentException(String.format("invalid address range: from %d, count %d", from, count));
+        }
+
+        return StreamSupport.stream(new AddressSpliterator(this, from, from + count), false);
+    }
+
+    Address newAddress(int addrIdx) {
+        return new Address(params, engine, addrIdx);
+    }
+
+    /**
+     * Derive the addresses for the index range [from, from + count) as a batch.
+     * All public keys of the batch are normalized with a single field inversion
+     * and hashed in lane groups of BatchHash160.
+     * Addresses of a batch are not added to the cache of this chain.
+     *
+     * @param int from index of first address
+     * @param int count number of addresses
+     *
+     * @return List<Address>
+     *
+     */
+    public List<Address> deriveAddresses(int from, int count) {
+
+        if(from < 0 || count < 0 || count > Integer.MAX_VALUE - from) {
+            throw new IllegalArgumentException(String.format("invalid address range: from %d, count %d", from, count));
+        }
+
+        ECKey[] keys = engine.deriveKeys(from, count);
+        byte[][] pubKeys = new byte[count][];
+
+        for(int i = 0; i < count; i++) {
+            pubKeys[i] = keys[i].getPubKey();
+        }
+
+        byte[][] hashes = BatchHash160.hash160(pubKeys);
+        List<Address> addresses = new ArrayList<Address>(count);
+
+        for(int i = 0; i < count; i++) {
+            addresses.add(new Address(params, engine, from + i, keys[i], hashes[i]));
+        }
+
+        return addresses;
     }
 
     /**
@@ -86,7 +187,7 @@ public class Chain {
 
             JSONArray addresses = new JSONArray();
             for(int i = 0; i < 2; i++) {
-                Address addr = new Address(params, cKey, i);
+                Address addr = getAddressAt(i);
                 addresses.put(addr.toJSON());
             }
             obj.put("addresses", addresses);
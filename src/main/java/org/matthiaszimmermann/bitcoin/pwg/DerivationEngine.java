@@ -0,0 +1,268 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDDerivationException;
+import org.bitcoinj.crypto.HDUtils;
+import org.bitcoinj.crypto.LazyECPoint;
+import org.spongycastle.math.ec.ECPoint;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ *
+ * DerivationEngine.java : BIP32 child key derivation for a fixed parent key
+ *
+ * The HMAC-SHA512 keyed with the parent chain code is precomputed once per parent.
+ * Every thread reuses its own HMAC context and buffers for all children of the parent.
+ * Multiples of the generator are computed with a FixedBaseMultiplier, by default
+ * the shared one. Engines for child keys created by deriveEngine() use the
+ * multiplier of their parent engine.
+ *
+ */
+public class DerivationEngine {
+
+	private static final int KEY_LENGTH = 32;
+	private static final int PUBKEY_LENGTH = 33;
+
+	private final DeterministicKey parent;
+	private final FixedBaseMultiplier multiplier;
+	private final PrecomputedHmac hmac;
+	private final ThreadLocal<Work> work;
+
+	private final byte[] parentPubKey;
+	private final byte[] parentPrivKeyBytes;
+	private final BigInteger parentPrivKey;
+
+	private String strPath = null;
+
+	/**
+	 * Constructor for a derivation engine.
+	 *
+	 * @param DeterministicKey parent key to derive the children from
+	 *
+	 */
+	public DerivationEngine(DeterministicKey parent) {
+		this(parent, FixedBaseMultiplier.getInstance());
+	}
+
+	/**
+	 * Constructor for a derivation engine with its own multiplier, e.g. for another window size.
+	 *
+	 * @param DeterministicKey parent key to derive the children from
+	 * @param FixedBaseMultiplier multiplier multiplier for the child public keys
+	 *
+	 */
+	public DerivationEngine(DeterministicKey parent, FixedBaseMultiplier multiplier) {
+		this.parent = parent;
+		this.multiplier = multiplier;
+
+		hmac = PrecomputedHmac.sha512(parent.getChainCode());
+		work = ThreadLocal.withInitial(Work::new);
+
+		parentPubKey = parent.getPubKey();
+		parentPrivKey = parent.hasPrivKey() ? parent.getPrivKey() : null;
+		parentPrivKeyBytes = parent.hasPrivKey() ? parent.getPrivKeyBytes() : null;
+	}
+
+	/**
+	 * Return parent key of this engine.
+	 *
+	 * @return DeterministicKey
+	 *
+	 */
+	public DeterministicKey getParent() {
+		return parent;
+	}
+
+	/**
+	 * Return multiplier of this engine.
+	 *
+	 * @return FixedBaseMultiplier
+	 *
+	 */
+	public FixedBaseMultiplier getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * Return BIP32 path of the parent key.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getPath() {
+		if(strPath == null) {
+			strPath = parent.getPathAsString();
+		}
+
+		return strPath;
+	}
+
+	/**
+	 * Derive child key for the provided child number.
+	 * Results are identical to HDKeyDerivation.deriveChildKey(parent, childNumber).
+	 *
+	 * @param ChildNumber childNumber
+	 *
+	 * @return DeterministicKey
+	 *
+	 */
+	public DeterministicKey deriveChild(ChildNumber childNumber) throws HDDerivationException {
+		byte[] out = hmac(childNumber);
+
+		BigInteger il = new BigInteger(1, Arrays.copyOfRange(out, 0, KEY_LENGTH));
+		byte[] chainCode = Arrays.copyOfRange(out, KEY_LENGTH, 2 * KEY_LENGTH);
+		BigInteger n = ECKey.CURVE.getN();
+
+		if(il.compareTo(n) >= 0) {
+			throw new HDDerivationException("Illegal derived key: I_L >= n");
+		}
+
+		ImmutableList<ChildNumber> path = HDUtils.append(parent.getPath(), childNumber);
+
+		if(parentPrivKey != null) {
+			BigInteger ki = il.add(parentPrivKey).mod(n);
+
+			if(ki.signum() == 0) {
+				throw new HDDerivationException("Illegal derived key: derived private key equals 0.");
+			}
+
+			ECPoint pub = ECKey.compressPoint(multiplier.multiply(ki));
+			return new DeterministicKey(path, chainCode, pub, ki, parent);
+		}
+
+		ECPoint pub = multiplier.multiply(il, parent.getPubKeyPoint());
+
+		if(pub.isInfinity()) {
+			throw new HDDerivationException("Illegal derived key: derived public key equals infinity.");
+		}
+
+		return new DeterministicKey(path, chainCode, new LazyECPoint(ECKey.CURVE.getCurve(), pub.getEncoded(true)), null, parent);
+	}
+
+	/**
+	 * Derive the keys of the non hardened children [from, from + count) as a batch.
+	 * The public keys stay in Jacobian coordinates until the whole batch is normalized
+	 * with a single field inversion. Public keys are neither encoded nor decoded on the way,
+	 * keys are returned with compressed public keys.
+	 *
+	 * @param int from index of the first child
+	 * @param int count number of children
+	 *
+	 * @return ECKey[]
+	 *
+	 */
+	public ECKey[] deriveKeys(int from, int count) throws HDDerivationException {
+		BigInteger n = ECKey.CURVE.getN();
+		BigInteger[] scalars = new BigInteger[count];
+
+		for(int i = 0; i < count; i++) {
+			byte[] out = hmac(new ChildNumber(from + i, false));
+			BigInteger il = new BigInteger(1, Arrays.copyOfRange(out, 0, KEY_LENGTH));
+
+			if(il.compareTo(n) >= 0) {
+				throw new HDDerivationException("Illegal derived key: I_L >= n");
+			}
+
+			scalars[i] = parentPrivKey != null ? il.add(parentPrivKey).mod(n) : il;
+
+			if(scalars[i].signum() == 0) {
+				throw new HDDerivationException("Illegal derived key: derived private key equals 0.");
+			}
+		}
+
+		// public derivation adds the parent public key to every multiple of the generator
+		ECPoint addend = parentPrivKey != null ? null : parent.getPubKeyPoint();
+		ECPoint[] pubKeys = multiplier.multiplyAll(scalars, addend);
+		ECKey[] keys = new ECKey[count];
+
+		for(int i = 0; i < count; i++) {
+			if(pubKeys[i] == null) {
+				throw new HDDerivationException("Illegal derived key: derived public key equals infinity.");
+			}
+
+			ECPoint pub = ECKey.compressPoint(pubKeys[i]);
+
+			if(parentPrivKey != null) {
+				keys[i] = ECKey.fromPrivateAndPrecalculatedPublic(scalars[i], pub);
+			}
+			else {
+				keys[i] = ECKey.fromPublicOnly(pub);
+			}
+		}
+
+		return keys;
+	}
+
+	// HMAC-SHA512 of the child data, the result is a per thread buffer
+	private byte[] hmac(ChildNumber childNumber) throws HDDerivationException {
+		Work w = work.get();
+		byte[] data = w.data;
+		int offset = 0;
+
+		if(childNumber.isHardened()) {
+			if(parentPrivKey == null) {
+				throw new HDDerivationException("Parent key must have private key bytes for hardened derivation.");
+			}
+
+			// 0x00 || ser256(k_par)
+			data[0] = 0;
+			System.arraycopy(parentPrivKeyBytes, 0, data, 1, KEY_LENGTH);
+			offset = 1 + KEY_LENGTH;
+		}
+		else {
+			System.arraycopy(parentPubKey, 0, data, 0, PUBKEY_LENGTH);
+			offset = PUBKEY_LENGTH;
+		}
+
+		int i = childNumber.i();
+		data[offset] = (byte) (i >>> 24);
+		data[offset + 1] = (byte) (i >>> 16);
+		data[offset + 2] = (byte) (i >>> 8);
+		data[offset + 3] = (byte) i;
+
+		byte[] out = w.out;
+		w.context.mac(data, 0, offset + 4, out, 0);
+
+		return out;
+	}
+
+	/**
+	 * Derive child key for the provided index.
+	 *
+	 * @param int index child index
+	 * @param boolean hardened use hardened derivation
+	 *
+	 * @return DeterministicKey
+	 *
+	 */
+	public DeterministicKey deriveChild(int index, boolean hardened) throws HDDerivationException {
+		return deriveChild(new ChildNumber(index, hardened));
+	}
+
+	/**
+	 * Derive child key for the provided index and return an engine for it
+	 * that uses the same multiplier as this engine.
+	 *
+	 * @param int index child index
+	 * @param boolean hardened use hardened derivation
+	 *
+	 * @return DerivationEngine
+	 *
+	 */
+	public DerivationEngine deriveEngine(int index, boolean hardened) throws HDDerivationException {
+		return new DerivationEngine(deriveChild(index, hardened), multiplier);
+	}
+
+	// per thread buffers for the derivation of a child
+	private class Work {
+		private final PrecomputedHmac.Context context = hmac.newContext();
+		private final byte[] data = new byte[1 + KEY_LENGTH + 4];
+		private final byte[] out = new byte[2 * KEY_LENGTH];
+	}
+}
@@ -0,0 +1,196 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ * DerivedKeyCache.java : bounded, time limited cache for PBKDF2 derived AES keys
+ *
+ * Entries are looked up by a SHA-256 fingerprint of pass phrase, salt, iteration
+ * count and key strength, the pass phrase itself is not kept. The least recently
+ * used entry is dropped once the cache is full and entries expire after their time
+ * to live. Key bytes of dropped entries are overwritten with zeros.
+ *
+ */
+public class DerivedKeyCache {
+
+	public static final int SIZE_DEFAULT = 16;
+	public static final long TIME_TO_LIVE_DEFAULT = TimeUnit.MINUTES.toMillis(10);
+
+	private final int size;
+	private final long timeToLive;
+	private final LongSupplier clock;
+	private final Map<ByteBuffer, CachedKey> entries;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Constructor for a cache with default size and time to live.
+	 */
+	public DerivedKeyCache() {
+		this(SIZE_DEFAULT, TIME_TO_LIVE_DEFAULT);
+	}
+
+	/**
+	 * Constructor for a cache.
+	 *
+	 * @param int size maximum number of cached keys
+	 * @param long timeToLive time to live of an entry in milliseconds
+	 *
+	 */
+	public DerivedKeyCache(int size, long timeToLive) {
+		this(size, timeToLive, System::currentTimeMillis);
+	}
+
+	DerivedKeyCache(int size, long timeToLive, LongSupplier clock) {
+		if(size < 1 || timeToLive < 1) {
+			throw new IllegalArgumentException("cache size and time to live must be positive");
+		}
+
+		this.size = size;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+
+		entries = new LinkedHashMap<ByteBuffer, CachedKey>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedKey> eldest) {
+				if(size() > DerivedKeyCache.this.size) {
+					evict(eldest.getValue());
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Return a copy of the cached key, or null if no valid entry exists.
+	 *
+	 * @param String passPhrase
+	 * @param byte[] salt
+	 * @param int iterationCount
+	 * @param int keyStrength key length in bits
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public byte[] get(String passPhrase, byte[] salt, int iterationCount, int keyStrength) throws NoSuchAlgorithmException {
+		ByteBuffer fingerprint = fingerprint(passPhrase, salt, iterationCount, keyStrength);
+
+		synchronized (entries) {
+			CachedKey entry = entries.get(fingerprint);
+
+			if(entry != null && entry.expires <= clock.getAsLong()) {
+				entries.remove(fingerprint);
+				evict(entry);
+				entry = null;
+			}
+
+			if(entry == null) {
+				misses.increment();
+				return null;
+			}
+
+			hits.increment();
+			return entry.key.clone();
+		}
+	}
+
+	/**
+	 * Add a derived key to the cache, the cache keeps its own copy of the key bytes.
+	 *
+	 * @param String passPhrase
+	 * @param byte[] salt
+	 * @param int iterationCount
+	 * @param int keyStrength key length in bits
+	 * @param byte[] key derived key
+	 *
+	 */
+	public void put(String passPhrase, byte[] salt, int iterationCount, int keyStrength, byte[] key) throws NoSuchAlgorithmException {
+		ByteBuffer fingerprint = fingerprint(passPhrase, salt, iterationCount, keyStrength);
+		CachedKey entry = new CachedKey(key.clone(), clock.getAsLong() + timeToLive);
+
+		synchronized (entries) {
+			CachedKey previous = entries.put(fingerprint, entry);
+
+			if(previous != null) {
+				evict(previous);
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries and overwrite their key bytes.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			Iterator<CachedKey> iterator = entries.values().iterator();
+
+			while(iterator.hasNext()) {
+				evict(iterator.next());
+				iterator.remove();
+			}
+		}
+	}
+
+	public int getSize() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	private void evict(CachedKey entry) {
+		Arrays.fill(entry.key, (byte) 0);
+		evictions.increment();
+	}
+
+	private static ByteBuffer fingerprint(String passPhrase, byte[] salt, int iterationCount, int keyStrength) throws NoSuchAlgorithmException {
+		byte[] password = passPhrase.getBytes(StandardCharsets.UTF_8);
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+		// length prefixes keep the pass phrase / salt boundary unambiguous
+		digest.update(ByteBuffer.allocate(16).putInt(password.length).putInt(salt.length).putInt(iterationCount).putInt(keyStrength).array());
+		digest.update(password);
+		digest.update(salt);
+		Arrays.fill(password, (byte) 0);
+
+		return ByteBuffer.wrap(digest.digest());
+	}
+
+	private static class CachedKey {
+		private final byte[] key;
+		private final long expires;
+
+		private CachedKey(byte[] key, long expires) {
+			this.key = key;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+/**
+ *
+ * EncryptedSeed.java : seed properties of a wallet file
+ *
+ * Holds the result of one seed encryption: the file version, the base64 encoded
+ * (encrypted) seed and IV, and for version 2.0 the per wallet and batch salts.
+ *
+ */
+public final class EncryptedSeed {
+
+	private final String version;
+	private final String seed;
+	private final String iv;
+	private final String salt;
+	private final String kdfSalt;
+	private final int kdfIterations;
+
+	/**
+	 * Constructor for version 1.0 seed properties.
+	 *
+	 * @param String seed base64 encoded seed, encrypted if the wallet has a pass phrase
+	 * @param String iv base64 encoded IV, empty for unencrypted seeds
+	 *
+	 */
+	public EncryptedSeed(String seed, String iv) {
+		this(Wallet.JSON_VERSION_VALUE, seed, iv, null, null, 0);
+	}
+
+	/**
+	 * Constructor for version 2.0 seed properties.
+	 *
+	 * @param String seed base64 encoded encrypted seed
+	 * @param String iv base64 encoded IV
+	 * @param String salt base64 encoded per wallet salt
+	 * @param String kdfSalt base64 encoded batch salt
+	 * @param int kdfIterations PBKDF2 iteration count of the batch key
+	 *
+	 */
+	public EncryptedSeed(String seed, String iv, String salt, String kdfSalt, int kdfIterations) {
+		this(Wallet.JSON_VERSION_BATCH_VALUE, seed, iv, salt, kdfSalt, kdfIterations);
+	}
+
+	private EncryptedSeed(String version, String seed, String iv, String salt, String kdfSalt, int kdfIterations) {
+		this.version = version;
+		this.seed = seed;
+		this.iv = iv;
+		this.salt = salt;
+		this.kdfSalt = kdfSalt;
+		this.kdfIterations = kdfIterations;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	public String getSeed() {
+		return seed;
+	}
+
+	public String getIv() {
+		return iv;
+	}
+
+	public String getSalt() {
+		return salt;
+	}
+
+	public String getKdfSalt() {
+		return kdfSalt;
+	}
+
+	public int getKdfIterations() {
+		return kdfIterations;
+	}
+
+	/**
+	 * Return true for version 2.0 seed properties.
+	 *
+	 * @return boolean
+	 *
+	 */
+	public boolean isBatch() {
+		return salt != null;
+	}
+}
@@ -0,0 +1,281 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ * EntropyService.java : per thread random generators for seeds, salts and IVs
+ *
+ * Each thread gets its own DRBG (SHA1PRNG on runtimes without DRBG), seeded from
+ * the operating system source. A generator is reseeded once its reseed interval
+ * has passed or after it has produced a fixed number of bytes. Optionally, a
+ * background thread prefills a bounded buffer with seeds of a fixed length.
+ *
+ */
+public class EntropyService {
+
+	public static final long RESEED_INTERVAL_DEFAULT = TimeUnit.MINUTES.toMillis(5);
+	public static final long RESEED_BYTES_DEFAULT = 1 << 20;
+	public static final int SEED_SOURCE_LENGTH = 32;
+
+	private static final String [] ALGORITHMS = { "DRBG", "SHA1PRNG" };
+	private static final String [] SEED_SOURCES = { "NativePRNGNonBlocking", "Windows-PRNG" };
+
+	private static final EntropyService instance = new EntropyService();
+
+	private final long reseedInterval;
+	private final long reseedBytes;
+	private final LongSupplier clock;
+	private final SecureRandom seedSource;
+	private final ThreadLocal<Generator> generators = ThreadLocal.withInitial(this::newGenerator);
+
+	private final LongAdder bytesServed = new LongAdder();
+	private final LongAdder reseeds = new LongAdder();
+	private final LongAdder bufferHits = new LongAdder();
+
+	private volatile Prefill prefill = null;
+
+	/**
+	 * Constructor for a service with default reseed interval and reseed byte count.
+	 */
+	public EntropyService() {
+		this(RESEED_INTERVAL_DEFAULT, RESEED_BYTES_DEFAULT, System::currentTimeMillis);
+	}
+
+	EntropyService(long reseedInterval, long reseedBytes, LongSupplier clock) {
+		this.reseedInterval = reseedInterval;
+		this.reseedBytes = reseedBytes;
+		this.clock = clock;
+		this.seedSource = newSeedSource();
+	}
+
+	/**
+	 * Return the shared entropy service.
+	 *
+	 * @return EntropyService
+	 *
+	 */
+	public static EntropyService getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Return a new seed. Taken from the prefill buffer if it holds seeds of the
+	 * requested length, otherwise produced by the generator of the calling thread.
+	 *
+	 * @param int length seed length in bytes
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public byte [] nextSeed(int length) {
+		Prefill current = prefill;
+
+		if(current != null && current.length == length) {
+			byte [] seed = current.buffer.poll();
+
+			if(seed != null) {
+				bufferHits.increment();
+				bytesServed.add(length);
+				return seed;
+			}
+		}
+
+		byte [] seed = new byte[length];
+		nextBytes(seed);
+		return seed;
+	}
+
+	/**
+	 * Fill the provided array with random bytes from the generator of the calling thread.
+	 *
+	 * @param byte[] bytes
+	 *
+	 */
+	public void nextBytes(byte [] bytes) {
+		Generator generator = generators.get();
+		generator.reseedIfDue(bytes.length);
+		generator.random.nextBytes(bytes);
+		bytesServed.add(bytes.length);
+	}
+
+	/**
+	 * Return the generator of the calling thread, e.g. for Cipher.init().
+	 * Bytes drawn directly from the generator are not counted as served.
+	 *
+	 * @return SecureRandom
+	 *
+	 */
+	public SecureRandom getRandom() {
+		Generator generator = generators.get();
+		generator.reseedIfDue(0);
+		return generator.random;
+	}
+
+	/**
+	 * Start a background thread keeping a bounded buffer filled with seeds.
+	 * Replaces a running prefill.
+	 *
+	 * @param int length seed length in bytes
+	 * @param int capacity maximum number of buffered seeds
+	 *
+	 */
+	public synchronized void startPrefill(int length, int capacity) {
+		stopPrefill();
+
+		Prefill next = new Prefill(length, capacity);
+		next.thread.start();
+		prefill = next;
+	}
+
+	/**
+	 * Stop the prefill thread and wipe the buffered seeds.
+	 */
+	public synchronized void stopPrefill() {
+		Prefill current = prefill;
+
+		if(current == null) {
+			return;
+		}
+
+		prefill = null;
+		current.thread.interrupt();
+
+		try {
+			current.thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for(byte [] seed = current.buffer.poll(); seed != null; seed = current.buffer.poll()) {
+			Arrays.fill(seed, (byte) 0);
+		}
+	}
+
+	/**
+	 * Return the number of buffered seeds, 0 without prefill.
+	 *
+	 * @return int
+	 *
+	 */
+	public int getBufferedSeeds() {
+		Prefill current = prefill;
+		return current != null ? current.buffer.size() : 0;
+	}
+
+	public long getBytesServed() {
+		return bytesServed.sum();
+	}
+
+	public long getReseeds() {
+		return reseeds.sum();
+	}
+
+	public long getBufferHits() {
+		return bufferHits.sum();
+	}
+
+	public String getAlgorithm() {
+		return generators.get().random.getAlgorithm();
+	}
+
+	private Generator newGenerator() {
+		for(String algorithm: ALGORITHMS) {
+			try {
+				Generator generator = new Generator(SecureRandom.getInstance(algorithm));
+				generator.reseed();
+				return generator;
+			}
+			catch (NoSuchAlgorithmException e) {
+				// try next algorithm
+			}
+		}
+
+		throw new IllegalStateException("no DRBG algorithm available: " + Arrays.toString(ALGORITHMS));
+	}
+
+	private static SecureRandom newSeedSource() {
+		for(String algorithm: SEED_SOURCES) {
+			try {
+				return SecureRandom.getInstance(algorithm);
+			}
+			catch (NoSuchAlgorithmException e) {
+				// try next source
+			}
+		}
+
+		return new SecureRandom();
+	}
+
+	private byte [] osSeed() {
+		// the operating system source is shared, keep the time spent holding it short
+		synchronized (seedSource) {
+			return seedSource.generateSeed(SEED_SOURCE_LENGTH);
+		}
+	}
+
+	private final class Generator {
+		private final SecureRandom random;
+		private long seededAt;
+		private long bytesSinceSeed;
+
+		Generator(SecureRandom random) {
+			this.random = random;
+		}
+
+		void reseedIfDue(int length) {
+			if(bytesSinceSeed + length > reseedBytes || clock.getAsLong() - seededAt > reseedInterval) {
+				reseed();
+			}
+
+			bytesSinceSeed += length;
+		}
+
+		void reseed() {
+			byte [] seed = osSeed();
+			random.setSeed(seed);
+			Arrays.fill(seed, (byte) 0);
+
+			seededAt = clock.getAsLong();
+			bytesSinceSeed = 0;
+			reseeds.increment();
+		}
+	}
+
+	private final class Prefill implements Runnable {
+		private final int length;
+		private final BlockingQueue<byte []> buffer;
+		private final Thread thread;
+
+		Prefill(int length, int capacity) {
+			this.length = length;
+			this.buffer = new ArrayBlockingQueue<>(Math.max(1, capacity));
+			this.thread = new Thread(this, "entropy-prefill");
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while(!Thread.currentThread().isInterrupted()) {
+					byte [] seed = new byte[length];
+					Generator generator = generators.get();
+					generator.reseedIfDue(length);
+					generator.random.nextBytes(seed);
+					buffer.put(seed);
+				}
+			}
+			catch (InterruptedException e) {
+				// stopped
+			}
+		}
+	}
+}
@@ -9,6 +9,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,6 +40,15 @@ public class FileUtility {
 		return sb.toString();
 	}
 
+	public static List<String> readLines(String fileName) {
+		try {
+			return Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+		}
+		catch (Exception e) {
+			throw new RuntimeException("Failed to read content from text file " + fileName, e);
+		}
+	}
+
 	public static void saveToFile(String buf, String fileName) {		
 		try(PrintWriter out = new PrintWriter(fileName)) {
 			out.println(buf);
@@ -46,6 +58,17 @@ public class FileUtility {
 		}
 	}
 
+	public static void saveToFile(List<String> lines, String fileName) {
+		try(PrintWriter out = new PrintWriter(fileName)) {
+			for(String line: lines) {
+				out.println(line);
+			}
+		}
+		catch(Exception e) {
+			throw new RuntimeException("Failed to write content to file " + fileName, e);
+		}
+	}
+
 	public static void saveToFile(byte [] buf, String fileName) {
 		try (FileOutputStream fos = new FileOutputStream(fileName)) {
 			fos.write(buf);
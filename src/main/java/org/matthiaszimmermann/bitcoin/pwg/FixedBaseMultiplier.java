@@ -0,0 +1,521 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.math.BigInteger;
+
+import org.bitcoinj.core.ECKey;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.custom.sec.SecP256K1Field;
+import org.spongycastle.math.raw.Nat256;
+
+/**
+ *
+ * FixedBaseMultiplier.java : secp256k1 generator multiplication with a precomputed table
+ *
+ * The scalar is split into windows of w bits. For window j the table holds the
+ * multiples d * 2^(w*j) * G for d = 1 .. 2^w - 1 as affine coordinates in a single
+ * int array, so a multiplication takes at most 256/w mixed point additions and no
+ * doublings. The table has (256/w) * (2^w - 1) points of 64 bytes: 16 KB for w = 4
+ * (default), 520 KB for w = 8 and 3 MB for w = 11.
+ *
+ * Field elements are fixed width 8x32 bit limbs in plain int arrays. Products go to a
+ * per thread 512 bit buffer and are reduced with the secp256k1 reduction of spongycastle,
+ * so no field operation allocates. The result is normalized with a single field
+ * inversion. Bulk multiplications keep their results in Jacobian coordinates and
+ * normalize the whole batch with one inversion (Montgomery's trick).
+ *
+ * Scalars of private keys (multiplications without addend) never index the table.
+ * Each window reads all entries of its row and keeps the one of its digit with a
+ * mask, and every window performs one addition, whose result is dropped for zero
+ * digits. The only branch left on the scalar is the first addition into the empty
+ * accumulator. Reading whole rows grows with 2^w, which is why the default window is
+ * small. Public child derivation (with the parent public key as addend) uses no
+ * secret scalar and indexes the table directly.
+ *
+ * Multipliers are immutable and can be shared by any number of threads. The
+ * default instance is passed on to the derivation engines of a wallet unless
+ * the wallet is created with a multiplier of its own.
+ *
+ */
+public final class FixedBaseMultiplier {
+
+	public static final int WINDOW_DEFAULT = 4;
+	public static final int WINDOW_MIN = 2;
+	public static final int WINDOW_MAX = 12;
+
+	private static final ECCurve CURVE = ECKey.CURVE.getCurve();
+	private static final BigInteger ORDER = ECKey.CURVE.getN();
+	private static final int BITS = ORDER.bitLength();
+
+	// affine point: 8 words x, 8 words y
+	private static final int WORDS = 8;
+	private static final int POINT_WORDS = 2 * WORDS;
+
+	private final int window;
+	private final int windows;
+	private final int entries;
+	private final int [] table;
+
+	// per thread accumulator and field buffers, reused by all multiplications of a thread
+	private final ThreadLocal<Jacobian> work = ThreadLocal.withInitial(Jacobian::new);
+
+	/**
+	 * Constructor for a multiplier. Builds the table, which takes some time for large windows.
+	 *
+	 * @param int window window size in bits
+	 *
+	 */
+	public FixedBaseMultiplier(int window) {
+		if(window < WINDOW_MIN || window > WINDOW_MAX) {
+			throw new IllegalArgumentException(String.format("window size must be between %d and %d: %d", WINDOW_MIN, WINDOW_MAX, window));
+		}
+
+		this.window = window;
+		this.windows = (BITS + window - 1) / window;
+		this.entries = (1 << window) - 1;
+
+		ECPoint [] points = new ECPoint[windows * entries];
+		ECPoint base = ECKey.CURVE.getG();
+
+		for(int j = 0; j < windows; j++) {
+			ECPoint multiple = base;
+
+			for(int d = 0; d < entries; d++) {
+				points[j * entries + d] = multiple;
+				multiple = multiple.add(base);
+			}
+
+			// 2^w * base of this window is the base of the next one
+			base = multiple.normalize();
+		}
+
+		// one shared inversion for all table entries
+		CURVE.normalizeAll(points);
+
+		table = new int[points.length * POINT_WORDS];
+
+		for(int i = 0; i < points.length; i++) {
+			int [] x = Nat256.fromBigInteger(points[i].getAffineXCoord().toBigInteger());
+			int [] y = Nat256.fromBigInteger(points[i].getAffineYCoord().toBigInteger());
+			System.arraycopy(x, 0, table, i * POINT_WORDS, WORDS);
+			System.arraycopy(y, 0, table, i * POINT_WORDS + WORDS, WORDS);
+		}
+	}
+
+	/**
+	 * Return the default multiplier, created with the default window on first use.
+	 *
+	 * @return FixedBaseMultiplier
+	 *
+	 */
+	public static FixedBaseMultiplier getInstance() {
+		return Default.INSTANCE;
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Return the number of precomputed points.
+	 *
+	 * @return int
+	 *
+	 */
+	public int getTableSize() {
+		return windows * entries;
+	}
+
+	/**
+	 * Return k * G as a normalized point, the table is read independent of k.
+	 *
+	 * @param BigInteger k scalar, reduced modulo the group order
+	 *
+	 * @return ECPoint
+	 *
+	 */
+	public ECPoint multiply(BigInteger k) {
+		return multiply(k, null);
+	}
+
+	/**
+	 * Return k * G + q as a normalized point, e.g. for public child key derivation.
+	 *
+	 * @param BigInteger k scalar, reduced modulo the group order
+	 * @param ECPoint q point to add, may be null
+	 *
+	 * @return ECPoint
+	 *
+	 */
+	public ECPoint multiply(BigInteger k, ECPoint q) {
+		Jacobian r = work.get();
+		accumulate(r, k, affine(q));
+
+		if(r.infinity) {
+			return CURVE.getInfinity();
+		}
+
+		r.invert(r.z, r.zInv);
+		r.normalize(r.zInv);
+
+		return CURVE.createPoint(Nat256.toBigInteger(r.x), Nat256.toBigInteger(r.y));
+	}
+
+	/**
+	 * Return k_i * G + q for all scalars. All points are normalized with a single field
+	 * inversion and 3(n-1) multiplications. Without q the table is read independent of the scalars.
+	 *
+	 * @param BigInteger[] scalars scalars, reduced modulo the group order
+	 * @param ECPoint q point added to each multiple, may be null
+	 *
+	 * @return ECPoint[] normalized points, null for the point at infinity
+	 *
+	 */
+	public ECPoint [] multiplyAll(BigInteger [] scalars, ECPoint q) {
+		int [][] addend = affine(q);
+		int count = scalars.length;
+		Jacobian r = work.get();
+
+		// coordinates of the points and the running products of their z, WORDS per point
+		int [] xs = new int[count * WORDS];
+		int [] ys = new int[count * WORDS];
+		int [] zs = new int[count * WORDS];
+		int [] products = new int[count * WORDS];
+		boolean [] infinity = new boolean[count];
+		int first = -1;
+
+		for(int i = 0; i < count; i++) {
+			accumulate(r, scalars[i], addend);
+			infinity[i] = r.infinity;
+			int offset = i * WORDS;
+
+			if(!r.infinity) {
+				System.arraycopy(r.x, 0, xs, offset, WORDS);
+				System.arraycopy(r.y, 0, ys, offset, WORDS);
+				System.arraycopy(r.z, 0, zs, offset, WORDS);
+
+				if(first < 0) {
+					first = i;
+					System.arraycopy(r.z, 0, products, offset, WORDS);
+				}
+				else {
+					System.arraycopy(products, offset - WORDS, r.t1, 0, WORDS);
+					r.multiply(r.t1, r.z, r.t1);
+					System.arraycopy(r.t1, 0, products, offset, WORDS);
+				}
+			}
+			else if(first >= 0) {
+				System.arraycopy(products, offset - WORDS, products, offset, WORDS);
+			}
+		}
+
+		ECPoint [] result = new ECPoint[count];
+
+		if(first < 0) {
+			return result;
+		}
+
+		// inverse of the product of all z, then walk back to the inverse of each z
+		System.arraycopy(products, (count - 1) * WORDS, r.t2, 0, WORDS);
+		r.invert(r.t2, r.inv);
+
+		for(int i = count - 1; i >= 0; i--) {
+			if(infinity[i]) {
+				continue;
+			}
+
+			int offset = i * WORDS;
+			System.arraycopy(xs, offset, r.x, 0, WORDS);
+			System.arraycopy(ys, offset, r.y, 0, WORDS);
+			System.arraycopy(zs, offset, r.z, 0, WORDS);
+
+			// product of the z of all points before this one
+			if(i > first) {
+				System.arraycopy(products, offset - WORDS, r.t2, 0, WORDS);
+				r.multiply(r.inv, r.t2, r.zInv);
+				r.multiply(r.inv, r.z, r.inv);
+			}
+			else {
+				Nat256.copy(r.inv, r.zInv);
+			}
+
+			r.normalize(r.zInv);
+			result[i] = CURVE.createPoint(Nat256.toBigInteger(r.x), Nat256.toBigInteger(r.y));
+		}
+
+		return result;
+	}
+
+	private void accumulate(Jacobian r, BigInteger k, int [][] addend) {
+		BigInteger scalar = k.signum() < 0 || k.bitLength() > BITS ? k.mod(ORDER) : k;
+		r.infinity = true;
+
+		for(int j = 0; j < windows; j++) {
+			int digit = 0;
+
+			for(int bit = Math.min(BITS, (j + 1) * window) - 1; bit >= j * window; bit--) {
+				digit = (digit << 1) | (scalar.testBit(bit) ? 1 : 0);
+			}
+
+			if(addend == null) {
+				r.select(table, j * entries * POINT_WORDS, entries, digit);
+				r.addSelected(digit);
+			}
+			else if(digit != 0) {
+				int offset = (j * entries + digit - 1) * POINT_WORDS;
+				r.addAffine(table, offset, table, offset + WORDS);
+			}
+		}
+
+		if(addend != null) {
+			r.addAffine(addend[0], 0, addend[1], 0);
+		}
+	}
+
+	private static int [][] affine(ECPoint q) {
+		if(q == null || q.isInfinity()) {
+			return null;
+		}
+
+		ECPoint p = q.normalize();
+		return new int [][] { Nat256.fromBigInteger(p.getAffineXCoord().toBigInteger()), Nat256.fromBigInteger(p.getAffineYCoord().toBigInteger()) };
+	}
+
+	// the default table is built on first use
+	private static final class Default {
+		private static final FixedBaseMultiplier INSTANCE = new FixedBaseMultiplier(WINDOW_DEFAULT);
+	}
+
+	/**
+	 * Point in Jacobian coordinates (x = X/Z^2, y = Y/Z^3) on a = 0 curves,
+	 * together with the buffers of its field operations.
+	 */
+	private static final class Jacobian {
+		private final int [] x = Nat256.create();
+		private final int [] y = Nat256.create();
+		private final int [] z = Nat256.create();
+		private boolean infinity = true;
+
+		// double width product, reduced into the target of each multiplication
+		private final int [] ext = Nat256.createExt();
+
+		private final int [] t1 = Nat256.create();
+		private final int [] t2 = Nat256.create();
+		private final int [] t3 = Nat256.create();
+		private final int [] t4 = Nat256.create();
+		private final int [] t5 = Nat256.create();
+		private final int [] t6 = Nat256.create();
+
+		// table entry picked by select()
+		private final int [] px = Nat256.create();
+		private final int [] py = Nat256.create();
+
+		// state before addSelected()
+		private final int [] sx = Nat256.create();
+		private final int [] sy = Nat256.create();
+		private final int [] sz = Nat256.create();
+
+		private final int [] inv = Nat256.create();
+		private final int [] zInv = Nat256.create();
+
+		// powers of the inversion chain
+		private final int [] x2 = Nat256.create();
+		private final int [] x3 = Nat256.create();
+		private final int [] x22 = Nat256.create();
+		private final int [] x44 = Nat256.create();
+		private final int [] x88 = Nat256.create();
+		private final int [] t = Nat256.create();
+
+		void multiply(int [] a, int [] b, int [] c) {
+			Nat256.mul(a, b, ext);
+			SecP256K1Field.reduce(ext, c);
+		}
+
+		void square(int [] a, int [] c) {
+			Nat256.square(a, ext);
+			SecP256K1Field.reduce(ext, c);
+		}
+
+		void squareN(int [] a, int n, int [] c) {
+			square(a, c);
+
+			for(int i = 1; i < n; i++) {
+				square(c, c);
+			}
+		}
+
+		// copy entry digit (1 .. count) of the row at offset to px, py, zeros for digit 0, reading every entry
+		void select(int [] table, int offset, int count, int digit) {
+			Nat256.zero(px);
+			Nat256.zero(py);
+
+			for(int d = 1; d <= count; d++, offset += POINT_WORDS) {
+				int mask = ((d ^ digit) - 1) >> 31;
+
+				for(int i = 0; i < WORDS; i++) {
+					px[i] |= table[offset + i] & mask;
+					py[i] |= table[offset + WORDS + i] & mask;
+				}
+			}
+		}
+
+		// add px, py for a non zero digit, for digit 0 the addition is done and its result dropped
+		void addSelected(int digit) {
+			Nat256.copy(x, sx);
+			Nat256.copy(y, sy);
+			Nat256.copy(z, sz);
+			int wasInfinity = infinity ? -1 : 0;
+
+			addAffine(px, 0, py, 0);
+
+			int keep = -((digit | -digit) >>> 31);
+
+			for(int i = 0; i < WORDS; i++) {
+				x[i] = (x[i] & keep) | (sx[i] & ~keep);
+				y[i] = (y[i] & keep) | (sy[i] & ~keep);
+				z[i] = (z[i] & keep) | (sz[i] & ~keep);
+			}
+
+			infinity = (((infinity ? -1 : 0) & keep) | (wasInfinity & ~keep)) != 0;
+		}
+
+		// madd: 8M + 3S
+		void addAffine(int [] px, int pxOff, int [] py, int pyOff) {
+			int [] ax = t5;
+			int [] ay = t6;
+			System.arraycopy(px, pxOff, ax, 0, WORDS);
+			System.arraycopy(py, pyOff, ay, 0, WORDS);
+
+			if(infinity) {
+				Nat256.copy(ax, x);
+				Nat256.copy(ay, y);
+				Nat256.zero(z);
+				z[0] = 1;
+				infinity = false;
+				return;
+			}
+
+			int [] h = t2;
+			int [] r = t3;
+
+			square(z, t1);                              // Z1Z1
+			multiply(ax, t1, h);                        // U2
+			SecP256K1Field.subtract(h, x, h);           // H = U2 - X1
+			multiply(t1, z, t1);                        // Z1^3
+			multiply(ay, t1, r);                        // S2
+			SecP256K1Field.subtract(r, y, r);           // r = S2 - Y1
+
+			if(Nat256.isZero(h)) {
+				if(Nat256.isZero(r)) {
+					twice();
+				}
+				else {
+					infinity = true;
+				}
+
+				return;
+			}
+
+			int [] hh = t1;
+			int [] hhh = t4;
+			int [] v = t5;
+
+			square(h, hh);                              // HH
+			multiply(h, hh, hhh);                       // HHH
+			multiply(x, hh, v);                         // V = X1 * HH
+			multiply(z, h, z);                          // Z3 = Z1 * H
+
+			square(r, x);                               // X3 = r^2 - HHH - 2V
+			SecP256K1Field.subtract(x, hhh, x);
+			SecP256K1Field.subtract(x, v, x);
+			SecP256K1Field.subtract(x, v, x);
+
+			multiply(y, hhh, hhh);                      // Y1 * HHH
+			SecP256K1Field.subtract(v, x, v);
+			multiply(r, v, y);                          // Y3 = r * (V - X3) - Y1 * HHH
+			SecP256K1Field.subtract(y, hhh, y);
+		}
+
+		// dbl: 3M + 4S
+		void twice() {
+			int [] a = t1;
+			int [] b = t2;
+			int [] c = t3;
+			int [] d = t4;
+			int [] e = t5;
+
+			square(x, a);                               // A = X1^2
+			square(y, b);                               // B = Y1^2
+			square(b, c);                               // C = B^2
+			SecP256K1Field.add(x, b, d);                // D = 2 * ((X1 + B)^2 - A - C)
+			square(d, d);
+			SecP256K1Field.subtract(d, a, d);
+			SecP256K1Field.subtract(d, c, d);
+			SecP256K1Field.twice(d, d);
+			SecP256K1Field.twice(a, e);                 // E = 3A
+			SecP256K1Field.add(e, a, e);
+
+			multiply(y, z, z);                          // Z3 = 2 * Y1 * Z1
+			SecP256K1Field.twice(z, z);
+
+			square(e, x);                               // X3 = E^2 - 2D
+			SecP256K1Field.subtract(x, d, x);
+			SecP256K1Field.subtract(x, d, x);
+
+			SecP256K1Field.subtract(d, x, d);           // Y3 = E * (D - X3) - 8C
+			multiply(e, d, y);
+			SecP256K1Field.twice(c, c);
+			SecP256K1Field.twice(c, c);
+			SecP256K1Field.twice(c, c);
+			SecP256K1Field.subtract(y, c, y);
+		}
+
+		// x = X/Z^2, y = Y/Z^3 for the provided inverse of Z
+		void normalize(int [] zInv) {
+			int [] zInv2 = t1;
+			square(zInv, zInv2);
+			multiply(x, zInv2, x);
+			multiply(zInv2, zInv, zInv2);
+			multiply(y, zInv2, y);
+			Nat256.zero(z);
+			z[0] = 1;
+		}
+
+		// field inversion c = a^(p-2) with the addition chain of libsecp256k1
+		void invert(int [] a, int [] c) {
+			square(a, x2);
+			multiply(x2, a, x2);                        // a^(2^2-1)
+			square(x2, x3);
+			multiply(x3, a, x3);                        // a^(2^3-1)
+
+			squareN(x3, 3, t);
+			multiply(t, x3, t);                         // 2^6-1
+			squareN(t, 3, t);
+			multiply(t, x3, t);                         // 2^9-1
+			squareN(t, 2, t);
+			multiply(t, x2, t);                         // 2^11-1
+			squareN(t, 11, x22);
+			multiply(x22, t, x22);                      // 2^22-1
+			squareN(x22, 22, x44);
+			multiply(x44, x22, x44);                    // 2^44-1
+			squareN(x44, 44, t);
+			multiply(t, x44, t);                        // 2^88-1
+			Nat256.copy(t, x88);
+			squareN(t, 88, t);
+			multiply(t, x88, t);                        // 2^176-1
+			squareN(t, 44, t);
+			multiply(t, x44, t);                        // 2^220-1
+			squareN(t, 3, t);
+			multiply(t, x3, t);                         // 2^223-1
+
+			squareN(t, 23, t);
+			multiply(t, x22, t);
+			squareN(t, 5, t);
+			multiply(t, a, t);
+			squareN(t, 3, t);
+			multiply(t, x2, t);
+			squareN(t, 2, t);
+			multiply(t, a, c);
+		}
+	}
+}
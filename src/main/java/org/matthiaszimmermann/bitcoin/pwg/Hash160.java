@@ -0,0 +1,134 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.spongycastle.crypto.digests.RIPEMD160Digest;
+
+/**
+ *
+ * Hash160.java : hash160 and Base58Check checksums with per thread digests
+ *
+ * Each thread keeps one SHA-256 digest (JCA, which uses the SHA instructions of
+ * the CPU where available), one RIPEMD-160 digest and a scratch buffer. Results
+ * are written into arrays provided by the caller, a hash does not allocate.
+ *
+ */
+public final class Hash160 {
+
+	public static final int HASH_LENGTH = 20;
+	public static final int CHECKSUM_LENGTH = 4;
+	public static final int ADDRESS_LENGTH = 1 + HASH_LENGTH + CHECKSUM_LENGTH;
+
+	private static final int SHA256_LENGTH = 32;
+
+	private static final ThreadLocal<Digests> digests = ThreadLocal.withInitial(Digests::new);
+
+	private Hash160() {
+	}
+
+	/**
+	 * Write RIPEMD-160(SHA-256(data)) into the provided buffer.
+	 *
+	 * @param byte[] data
+	 * @param int offset offset of the data
+	 * @param int length length of the data
+	 * @param byte[] out buffer for the 20 byte hash
+	 * @param int outOffset offset in the buffer
+	 *
+	 */
+	public static void hash160(byte[] data, int offset, int length, byte[] out, int outOffset) {
+		Digests d = digests.get();
+		d.sha256(data, offset, length);
+		d.ripemd160.update(d.buffer, 0, SHA256_LENGTH);
+		d.ripemd160.doFinal(out, outOffset);
+	}
+
+	/**
+	 * Return RIPEMD-160(SHA-256(data)), e.g. for a public key.
+	 *
+	 * @param byte[] data
+	 *
+	 * @return byte[] 20 byte hash
+	 *
+	 */
+	public static byte[] hash160(byte[] data) {
+		byte[] hash = new byte[HASH_LENGTH];
+		hash160(data, 0, data.length, hash, 0);
+		return hash;
+	}
+
+	/**
+	 * Write the Base58Check checksum, the first 4 bytes of SHA-256(SHA-256(data)), into the provided buffer.
+	 *
+	 * @param byte[] data
+	 * @param int offset offset of the data
+	 * @param int length length of the data
+	 * @param byte[] out buffer for the 4 byte checksum
+	 * @param int outOffset offset in the buffer
+	 *
+	 */
+	public static void checksum(byte[] data, int offset, int length, byte[] out, int outOffset) {
+		Digests d = digests.get();
+		d.sha256(data, offset, length);
+		d.sha256(d.buffer, 0, SHA256_LENGTH);
+		System.arraycopy(d.buffer, 0, out, outOffset, CHECKSUM_LENGTH);
+	}
+
+	/**
+	 * Write version byte, hash and checksum of an address into the provided 25 byte buffer.
+	 *
+	 * @param int version address header of the network
+	 * @param byte[] hash 20 byte hash160
+	 * @param byte[] out address buffer
+	 *
+	 */
+	public static void addressBytes(int version, byte[] hash, byte[] out) {
+		out[0] = (byte) version;
+		System.arraycopy(hash, 0, out, 1, HASH_LENGTH);
+		checksum(out, 0, 1 + HASH_LENGTH, out, 1 + HASH_LENGTH);
+	}
+
+	/**
+	 * Return the Base58Check address for a hash160.
+	 *
+	 * @param int version address header of the network
+	 * @param byte[] hash 20 byte hash160
+	 *
+	 * @return String
+	 *
+	 */
+	public static String toAddress(int version, byte[] hash) {
+		byte[] bytes = digests.get().address;
+		addressBytes(version, hash, bytes);
+		return Base58Check.encode(bytes, ADDRESS_LENGTH);
+	}
+
+	private static final class Digests {
+		private final MessageDigest sha256;
+		private final RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+		private final byte[] buffer = new byte[SHA256_LENGTH];
+		private final byte[] address = new byte[ADDRESS_LENGTH];
+
+		Digests() {
+			try {
+				sha256 = MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void sha256(byte[] data, int offset, int length) {
+			sha256.update(data, offset, length);
+
+			try {
+				sha256.digest(buffer, 0, SHA256_LENGTH);
+			}
+			catch (DigestException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -12,10 +12,14 @@ public class PaperWallet {
 	public static final int MNEMONIC_LENGTH_DEFAULT = 12;
 	public static final String WALLET_OK = "OK";
 	public static final String WALLET_ERROR = "ERROR";
+	public static final int FILE_CONTENT_INDENT = 4;
 
 	private String passPhrase;
 	private String pathToFile;
 	private Wallet wallet = null;
+	private BatchKey batchKey = null;
+	private DerivedKeyCache keyCache = null;
+	private volatile WalletSnapshot snapshot = null;
 
 	public PaperWallet(String passPhrase) {
 		this(passPhrase, getPathToFileDefault());
@@ -33,7 +37,29 @@ public class PaperWallet {
 			throw new RuntimeException(String.format("%s Failed to create account: %s", WALLET_ERROR, e.getMessage()));
 		}
 	}
-	
+
+	public PaperWallet(Wallet wallet, String pathToFile) {
+		this(wallet, pathToFile, null);
+	}
+
+	/**
+	 * Paper wallet for a wallet of a batch, the seed is encrypted with a subkey of the batch key.
+	 */
+	public PaperWallet(Wallet wallet, String pathToFile, BatchKey batchKey) {
+		this(wallet, pathToFile, batchKey, null);
+	}
+
+	/**
+	 * Paper wallet encrypting its seed with a key looked up in the provided cache, no caching if null.
+	 */
+	public PaperWallet(Wallet wallet, String pathToFile, BatchKey batchKey, DerivedKeyCache keyCache) {
+		this.passPhrase = setPassPhrase(wallet.getPassphrase());
+		this.pathToFile = setPathToFile(pathToFile);
+		this.wallet = wallet;
+		this.batchKey = batchKey;
+		this.keyCache = keyCache;
+	}
+
 	public PaperWallet(File sourceFile, String passPhrase) throws Exception  {
 		
 		// check if provided file exists
@@ -46,12 +72,10 @@ public class PaperWallet {
 			wallet = WalletFactory.getInstance().restoreWalletFromJSON(sourceFile.getAbsolutePath(), passPhrase);
 		} 
 		catch (MnemonicLengthException e) {
-			e.printStackTrace();
-			throw new RuntimeException(String.format("%s mnemonic length exception", WALLET_ERROR));
+			throw new RuntimeException(String.format("%s mnemonic length exception", WALLET_ERROR), e);
 		} 
 		catch (DecoderException e) {
-			e.printStackTrace();
-			throw new RuntimeException(String.format("%s decoding exception", WALLET_ERROR));
+			throw new RuntimeException(String.format("%s decoding exception: %s", WALLET_ERROR, e.getMessage()), e);
 		}
 	}
 	
@@ -60,17 +84,37 @@ public class PaperWallet {
 			return null;
 		}
 		
-		return wallet.toJSON();
+		return new JSONObject(getSnapshot().getCompactJson());
 	}
 	
+	/**
+	 * Return the serialized wallet. The wallet is serialized (and its seed encrypted) 
+	 * on the first call only, later calls return the same snapshot.
+	 */
+	public WalletSnapshot getSnapshot() {
+		if(snapshot == null) {
+			synchronized (this) {
+				if(snapshot == null) {
+					snapshot = new WalletSnapshot(wallet, batchKey, keyCache);
+				}
+			}
+		}
+		
+		return snapshot;
+	}
+	
+	/**
+	 * Verify a wallet file against the pass phrase.
+	 * Returns WALLET_OK for a valid wallet file, a description of the failure otherwise.
+	 */
 	public static String checkWalletFileStatus(File sourceFile, String passPhrase) {
-		try {
-			new PaperWallet(sourceFile, passPhrase);
+		VerificationResult result = new WalletVerifier(passPhrase).verify(sourceFile);
+		
+		if(result.isOk()) {
 			return WALLET_OK;
-		} 
-		catch (Exception e) {
-			return e.getMessage();
 		}
+		
+		return String.format("%s %s: %s", WALLET_ERROR, result.getStatus(), result.getMessage());
 	}
 	
 	public Wallet getWallet() {
@@ -78,7 +122,7 @@ public class PaperWallet {
 	}
 	
 	public String getAddress() {
-		return wallet.getAccount(0).getReceive().getAddressAt(0).getAddressString();
+		return wallet.getAddress().getAddressString();
 	}
 
 	public String getMnemonic() {
@@ -114,7 +158,7 @@ public class PaperWallet {
 	}
 
 	public String getFileContent() throws Exception {
-		return wallet.toJSON().toString(4);
+		return getSnapshot().getJson(FILE_CONTENT_INDENT);
 	}
 
 	public File getFile() {
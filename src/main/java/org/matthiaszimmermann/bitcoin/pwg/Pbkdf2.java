@@ -0,0 +1,124 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * Pbkdf2.java : PBKDF2 (RFC 8018) on top of a precomputed HMAC
+ *
+ * The password keyed HMAC state is computed once per derivation and all
+ * iterations update fixed buffers in place.
+ *
+ */
+public final class Pbkdf2 {
+
+	public static final int BIP39_ITERATIONS = 2048;
+	public static final int BIP39_SEED_LENGTH = 64;
+	public static final String BIP39_SALT_PREFIX = "mnemonic";
+
+	private Pbkdf2() { }
+
+	/**
+	 * Derive the BIP39 seed for a mnemonic.
+	 * Produces the same seed as MnemonicCode.toSeed(words, passphrase).
+	 *
+	 * @param List<String> words mnemonic words
+	 * @param String passphrase optional BIP39 passphrase
+	 *
+	 * @return byte[] 64 byte seed
+	 *
+	 */
+	public static byte[] bip39Seed(List<String> words, String passphrase) {
+		String mnemonic = Normalizer.normalize(String.join(" ", words), Normalizer.Form.NFKD);
+		String salt = Normalizer.normalize(BIP39_SALT_PREFIX + (passphrase == null ? "" : passphrase), Normalizer.Form.NFKD);
+
+		byte[] password = mnemonic.getBytes(StandardCharsets.UTF_8);
+		byte[] seed = deriveSha512(password, salt.getBytes(StandardCharsets.UTF_8), BIP39_ITERATIONS, BIP39_SEED_LENGTH);
+		Arrays.fill(password, (byte) 0);
+
+		return seed;
+	}
+
+	/**
+	 * Derive a key with PBKDF2-HMAC-SHA512.
+	 *
+	 * @param byte[] password
+	 * @param byte[] salt
+	 * @param int iterations
+	 * @param int keyLength length of the derived key in bytes
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public static byte[] deriveSha512(byte[] password, byte[] salt, int iterations, int keyLength) {
+		return derive(PrecomputedHmac.sha512(password), salt, iterations, keyLength);
+	}
+
+	/**
+	 * Derive a key with PBKDF2 using the provided password keyed HMAC.
+	 *
+	 * @param PrecomputedHmac hmac HMAC keyed with the password
+	 * @param byte[] salt
+	 * @param int iterations
+	 * @param int keyLength length of the derived key in bytes
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public static byte[] derive(PrecomputedHmac hmac, byte[] salt, int iterations, int keyLength) {
+		byte[] key = new byte[keyLength];
+		PrecomputedHmac.Context context = hmac.newContext();
+		int blocks = getBlockCount(hmac, keyLength);
+
+		for(int block = 1; block <= blocks; block++) {
+			deriveBlock(hmac, context, salt, iterations, block, key);
+		}
+
+		return key;
+	}
+
+	/**
+	 * Return number of PBKDF2 blocks needed for a key of the provided length.
+	 */
+	static int getBlockCount(PrecomputedHmac hmac, int keyLength) {
+		return (keyLength + hmac.getMacSize() - 1) / hmac.getMacSize();
+	}
+
+	/**
+	 * Compute block T_i = U_1 ^ U_2 ^ ... ^ U_c and copy it to its position in the key.
+	 * Blocks are independent of each other and may be computed on different threads,
+	 * each with its own context.
+	 */
+	static void deriveBlock(PrecomputedHmac hmac, PrecomputedHmac.Context context, byte[] salt, int iterations, int block, byte[] key) {
+		int macSize = hmac.getMacSize();
+		byte[] u = new byte[macSize];
+		byte[] t = new byte[macSize];
+
+		// U_1 = PRF(P, S || INT(i))
+		context.update(salt, 0, salt.length);
+		context.update((byte) (block >>> 24));
+		context.update((byte) (block >>> 16));
+		context.update((byte) (block >>> 8));
+		context.update((byte) block);
+		context.doFinal(u, 0);
+		System.arraycopy(u, 0, t, 0, macSize);
+
+		// U_j = PRF(P, U_{j-1})
+		for(int j = 1; j < iterations; j++) {
+			context.mac(u, 0, macSize, u, 0);
+
+			for(int k = 0; k < macSize; k++) {
+				t[k] ^= u[k];
+			}
+		}
+
+		int offset = (block - 1) * macSize;
+		System.arraycopy(t, 0, key, offset, Math.min(macSize, key.length - offset));
+
+		Arrays.fill(u, (byte) 0);
+		Arrays.fill(t, (byte) 0);
+	}
+}
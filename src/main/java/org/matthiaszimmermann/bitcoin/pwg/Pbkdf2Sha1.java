@@ -0,0 +1,146 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ *
+ * Pbkdf2Sha1.java : PBKDF2-HMAC-SHA1 for the AES key derivation
+ *
+ * The password keyed inner and outer SHA-1 states are computed once and cloned for
+ * every iteration, so each iteration costs two compressions of the platform SHA-1
+ * (which the JVM backs with hardware instructions where available). The output
+ * blocks of a key are independent and are computed in parallel.
+ *
+ */
+public final class Pbkdf2Sha1 {
+
+	private static final String ALGORITHM = "SHA-1";
+	private static final int BLOCK_BYTES = 64;
+	private static final int HASH_BYTES = 20;
+
+	private static final byte IPAD = (byte) 0x36;
+	private static final byte OPAD = (byte) 0x5C;
+
+	private Pbkdf2Sha1() { }
+
+	/**
+	 * Derive a key with PBKDF2-HMAC-SHA1, output blocks are computed in parallel.
+	 * The first block is computed on the calling thread, the others on the common fork join pool.
+	 * Produces the same key as SecretKeyFactory PBKDF2WithHmacSHA1.
+	 *
+	 * @param byte[] password
+	 * @param byte[] salt
+	 * @param int iterations
+	 * @param int keyLength length of the derived key in bytes
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public static byte[] derive(byte[] password, byte[] salt, int iterations, int keyLength) throws NoSuchAlgorithmException {
+		MessageDigest innerState = keyedState(password, IPAD);
+		MessageDigest outerState = keyedState(password, OPAD);
+
+		byte[] key = new byte[keyLength];
+		int blocks = (keyLength + HASH_BYTES - 1) / HASH_BYTES;
+		List<CompletableFuture<Void>> others = new ArrayList<>();
+
+		// blocks write to disjoint ranges of the key, each block clones its own digests
+		for(int block = 2; block <= blocks; block++) {
+			int i = block;
+			others.add(CompletableFuture.runAsync(() -> deriveBlock(innerState, outerState, salt, iterations, i, key)));
+		}
+
+		try {
+			deriveBlock(innerState, outerState, salt, iterations, 1, key);
+			others.forEach(CompletableFuture::join);
+		}
+		catch (CompletionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		return key;
+	}
+
+	private static MessageDigest keyedState(byte[] password, byte pad) throws NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance(ALGORITHM);
+		byte[] block = new byte[BLOCK_BYTES];
+
+		// keys longer than the block size are replaced by their hash
+		if(password.length > BLOCK_BYTES) {
+			System.arraycopy(digest.digest(password), 0, block, 0, HASH_BYTES);
+		}
+		else {
+			System.arraycopy(password, 0, block, 0, password.length);
+		}
+
+		for(int i = 0; i < BLOCK_BYTES; i++) {
+			block[i] ^= pad;
+		}
+
+		digest.update(block);
+		Arrays.fill(block, (byte) 0);
+
+		return digest;
+	}
+
+	private static void deriveBlock(MessageDigest innerState, MessageDigest outerState, byte[] salt, int iterations, int block, byte[] key) {
+		byte[] u = new byte[HASH_BYTES];
+		byte[] t = new byte[HASH_BYTES];
+		byte[] h = new byte[HASH_BYTES];
+
+		try {
+			// U_1 = PRF(P, S || INT(i))
+			MessageDigest inner = copy(innerState);
+			inner.update(salt);
+			inner.update(new byte[] { (byte) (block >>> 24), (byte) (block >>> 16), (byte) (block >>> 8), (byte) block });
+			inner.digest(h, 0, HASH_BYTES);
+
+			MessageDigest outer = copy(outerState);
+			outer.update(h);
+			outer.digest(u, 0, HASH_BYTES);
+			System.arraycopy(u, 0, t, 0, HASH_BYTES);
+
+			// U_j = PRF(P, U_{j-1})
+			for(int j = 1; j < iterations; j++) {
+				inner = copy(innerState);
+				inner.update(u);
+				inner.digest(h, 0, HASH_BYTES);
+
+				outer = copy(outerState);
+				outer.update(h);
+				outer.digest(u, 0, HASH_BYTES);
+
+				for(int k = 0; k < HASH_BYTES; k++) {
+					t[k] ^= u[k];
+				}
+			}
+		}
+		catch (DigestException e) {
+			throw new IllegalStateException(e);
+		}
+
+		int offset = (block - 1) * HASH_BYTES;
+		System.arraycopy(t, 0, key, offset, Math.min(HASH_BYTES, key.length - offset));
+
+		Arrays.fill(u, (byte) 0);
+		Arrays.fill(t, (byte) 0);
+		Arrays.fill(h, (byte) 0);
+	}
+
+	// clones the keyed digest state, the source digests are never updated after construction
+	private static MessageDigest copy(MessageDigest state) {
+		try {
+			return (MessageDigest) state.clone();
+		}
+		catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import org.spongycastle.crypto.ExtendedDigest;
+import org.spongycastle.crypto.digests.SHA512Digest;
+import org.spongycastle.util.Memoable;
+
+/**
+ *
+ * PrecomputedHmac.java : HMAC with the keyed inner and outer digest state computed once
+ *
+ * The instance itself is immutable and may be shared between threads. Each thread
+ * computes MACs through its own Context, which resets its working digests from the
+ * precomputed states and does not allocate per MAC.
+ *
+ */
+public final class PrecomputedHmac {
+
+	private static final byte IPAD = (byte) 0x36;
+	private static final byte OPAD = (byte) 0x5C;
+
+	private final Supplier<ExtendedDigest> digestFactory;
+	private final Memoable innerState;
+	private final Memoable outerState;
+	private final int macSize;
+
+	/**
+	 * Return a HMAC-SHA512 for the provided key.
+	 *
+	 * @param byte[] key HMAC key
+	 *
+	 * @return PrecomputedHmac
+	 *
+	 */
+	public static PrecomputedHmac sha512(byte[] key) {
+		return new PrecomputedHmac(SHA512Digest::new, key);
+	}
+
+	/**
+	 * Constructor for a HMAC.
+	 *
+	 * @param Supplier<ExtendedDigest> digestFactory creates the underlying digest, which must implement Memoable
+	 * @param byte[] key HMAC key
+	 *
+	 */
+	public PrecomputedHmac(Supplier<ExtendedDigest> digestFactory, byte[] key) {
+		this.digestFactory = digestFactory;
+
+		ExtendedDigest digest = digestFactory.get();
+		int blockSize = digest.getByteLength();
+		macSize = digest.getDigestSize();
+
+		// keys longer than the block size are replaced by their hash
+		byte[] block = new byte[blockSize];
+		if(key.length > blockSize) {
+			digest.update(key, 0, key.length);
+			digest.doFinal(block, 0);
+		}
+		else {
+			System.arraycopy(key, 0, block, 0, key.length);
+		}
+
+		innerState = keyedState(digest, block, IPAD);
+		outerState = keyedState(digest, block, OPAD);
+
+		Arrays.fill(block, (byte) 0);
+	}
+
+	private static Memoable keyedState(ExtendedDigest digest, byte[] block, byte pad) {
+		digest.reset();
+
+		for(int i = 0; i < block.length; i++) {
+			digest.update((byte) (block[i] ^ pad));
+		}
+
+		return ((Memoable) digest).copy();
+	}
+
+	/**
+	 * Return size of the MAC in bytes.
+	 *
+	 * @return int
+	 *
+	 */
+	public int getMacSize() {
+		return macSize;
+	}
+
+	/**
+	 * Return a new context for computing MACs with this key.
+	 * A context must only be used by one thread at a time.
+	 *
+	 * @return Context
+	 *
+	 */
+	public Context newContext() {
+		return new Context();
+	}
+
+	/**
+	 * Working digests and buffer for computing MACs on a single thread.
+	 */
+	public final class Context {
+
+		private final ExtendedDigest inner;
+		private final ExtendedDigest outer;
+		private final byte[] innerHash;
+
+		private Context() {
+			inner = digestFactory.get();
+			outer = digestFactory.get();
+			innerHash = new byte[macSize];
+
+			init();
+		}
+
+		/**
+		 * Start a new MAC computation.
+		 */
+		public void init() {
+			((Memoable) inner).reset(innerState);
+		}
+
+		public void update(byte b) {
+			inner.update(b);
+		}
+
+		public void update(byte[] in, int offset, int length) {
+			inner.update(in, offset, length);
+		}
+
+		/**
+		 * Finish the MAC computation, write the MAC to the output buffer and start a new computation.
+		 *
+		 * @param byte[] out output buffer
+		 * @param int outOffset offset of the MAC in the output buffer
+		 *
+		 */
+		public void doFinal(byte[] out, int outOffset) {
+			inner.doFinal(innerHash, 0);
+
+			((Memoable) outer).reset(outerState);
+			outer.update(innerHash, 0, macSize);
+			outer.doFinal(out, outOffset);
+
+			init();
+		}
+
+		/**
+		 * Compute the MAC over the provided input in one step.
+		 */
+		public void mac(byte[] in, int offset, int length, byte[] out, int outOffset) {
+			update(in, offset, length);
+			doFinal(out, outOffset);
+		}
+	}
+}
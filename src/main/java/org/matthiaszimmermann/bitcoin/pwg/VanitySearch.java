@@ -0,0 +1,420 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.params.MainNetParams;
+
+/**
+ *
+ * VanitySearch.java : searches wallets whose first receive address starts with a prefix
+ *
+ * A Base58 prefix of a pay to public key hash address corresponds to a few intervals
+ * of the 25 byte address number and therefore to a few hash160 ranges. These ranges
+ * are computed once per search, a candidate is then accepted or rejected by comparing
+ * its hash160 with the range bounds. Only a hash160 on a range bound, where the
+ * checksum decides, is encoded to Base58. Each worker thread draws random mnemonic
+ * entropy and derives the address M/44H/0H/0H/0/0 of Wallet.getAddress(), the BIP39
+ * seed (2048 rounds of HMAC-SHA512) dominates the cost of a candidate.
+ *
+ */
+public class VanitySearch {
+
+	public static final int THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+	public static final long PROGRESS_INTERVAL_DEFAULT = TimeUnit.SECONDS.toMillis(5);
+	public static final int SEED_LENGTH = (PaperWallet.MNEMONIC_LENGTH_DEFAULT / 3) * 4;
+
+	private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+	private static final int ADDRESS_BITS = 8 * Hash160.ADDRESS_LENGTH;
+	private static final int CHECKSUM_BITS = 8 * Hash160.CHECKSUM_LENGTH;
+	private static final BigInteger BASE = BigInteger.valueOf(58);
+
+	private final String prefix;
+	private final int version;
+	private final int threads;
+	private final List<Range> ranges;
+	private final double probability;
+
+	/**
+	 * Constructor for a search on the main network.
+	 *
+	 * @param String prefix Base58 prefix of the address, starting with '1'
+	 * @param int threads number of worker threads
+	 *
+	 */
+	public VanitySearch(String prefix, int threads) {
+		this.prefix = prefix;
+		this.version = MainNetParams.get().getAddressHeader();
+		this.threads = threads > 0 ? threads : THREADS_DEFAULT;
+
+		List<BigInteger[]> intervals = intervals(prefix, version);
+		List<Range> list = new ArrayList<>();
+		BigInteger matching = BigInteger.ZERO;
+
+		for(BigInteger[] interval: intervals) {
+			list.add(new Range(interval[0], interval[1]));
+			matching = matching.add(interval[1].subtract(interval[0]));
+		}
+
+		if(list.isEmpty()) {
+			throw new IllegalArgumentException(String.format("no address starts with prefix '%s'", prefix));
+		}
+
+		ranges = Collections.unmodifiableList(list);
+		probability = matching.doubleValue() / Math.pow(2.0, ADDRESS_BITS - 8);
+	}
+
+	/**
+	 * Return the probability that the address of a random wallet starts with the prefix.
+	 *
+	 * @return double
+	 *
+	 */
+	public double getProbability() {
+		return probability;
+	}
+
+	/**
+	 * Return the expected number of candidates per match.
+	 *
+	 * @return double
+	 *
+	 */
+	public double getExpectedCandidates() {
+		return 1.0 / probability;
+	}
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Search until a matching wallet is found or the maximum number of candidates is tried.
+	 *
+	 * @param long maxCandidates maximum number of candidates, unlimited if 0
+	 * @param long progressInterval milliseconds between progress reports
+	 * @param Consumer<Progress> progress receives the progress reports, may be null
+	 *
+	 * @return Result
+	 *
+	 */
+	public Result search(long maxCandidates, long progressInterval, Consumer<Progress> progress) throws InterruptedException {
+		AtomicReference<byte[]> match = new AtomicReference<>();
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		LongAdder candidates = new LongAdder();
+		long limit = maxCandidates > 0 ? maxCandidates : Long.MAX_VALUE;
+		long start = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		for(int i = 0; i < threads; i++) {
+			executor.submit(() -> work(match, failure, candidates, limit));
+		}
+
+		executor.shutdown();
+
+		try {
+			while(!executor.awaitTermination(progressInterval, TimeUnit.MILLISECONDS)) {
+				if(progress != null) {
+					progress.accept(new Progress(candidates.sum(), System.currentTimeMillis() - start, probability));
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		if(failure.get() != null) {
+			throw new IllegalStateException("vanity search failed: " + failure.get().getMessage(), failure.get());
+		}
+
+		return new Result(match.get(), candidates.sum(), System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Check if the address of the provided hash160 starts with the prefix.
+	 *
+	 * @param byte[] hash 20 byte hash160
+	 *
+	 * @return boolean
+	 *
+	 */
+	boolean matches(byte[] hash) {
+		for(Range range: ranges) {
+			int low = compare(hash, range.low);
+
+			if(low < 0) {
+				continue;
+			}
+
+			int high = compare(hash, range.high);
+
+			if(high > 0) {
+				continue;
+			}
+
+			// on a bound the checksum decides
+			if(low == 0 || high == 0) {
+				return Hash160.toAddress(version, hash).startsWith(prefix);
+			}
+
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Return the first receive address hash160 of the wallet with the provided entropy.
+	 *
+	 * @param Wordlist wordlist
+	 * @param byte[] entropy
+	 * @param byte[] hash buffer for the 20 byte hash160
+	 *
+	 */
+	static void receiveHash160(Wordlist wordlist, byte[] entropy, byte[] hash) throws Exception {
+		byte[] seed = Pbkdf2.bip39Seed(wordlist.toMnemonic(entropy), "");
+		DeterministicKey key = HDKeyDerivation.createMasterPrivateKey(seed);
+
+		key = new DerivationEngine(key).deriveChild(44, true);
+		key = new DerivationEngine(key).deriveChild(0, true);
+		key = new DerivationEngine(key).deriveChild(0, true);
+		key = new DerivationEngine(key).deriveChild(0, false);
+		key = new DerivationEngine(key).deriveChild(0, false);
+
+		byte[] pubKey = key.getPubKey();
+		Hash160.hash160(pubKey, 0, pubKey.length, hash, 0);
+	}
+
+	private void work(AtomicReference<byte[]> match, AtomicReference<Exception> failure, LongAdder candidates, long limit) {
+		Wordlist wordlist = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT);
+		EntropyService entropy = EntropyService.getInstance();
+		byte[] hash = new byte[Hash160.HASH_LENGTH];
+
+		try {
+			while(match.get() == null && failure.get() == null && candidates.sum() < limit && !Thread.currentThread().isInterrupted()) {
+				byte[] seed = entropy.nextSeed(SEED_LENGTH);
+				receiveHash160(wordlist, seed, hash);
+				candidates.increment();
+
+				if(matches(hash)) {
+					match.compareAndSet(null, seed);
+				}
+			}
+		}
+		catch(Exception e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	// address numbers V (version, hash160, checksum as one big endian number) whose address starts with the prefix
+	private static List<BigInteger[]> intervals(String prefix, int version) {
+		if(version != 0) {
+			throw new IllegalArgumentException("only addresses with version byte 0 supported");
+		}
+
+		if(prefix == null || prefix.isEmpty() || prefix.charAt(0) != ALPHABET.charAt(0)) {
+			throw new IllegalArgumentException(String.format("prefix '%s' does not start with '1'", prefix));
+		}
+
+		// leading '1' characters encode leading zero bytes
+		int ones = 0;
+		while(ones < prefix.length() && prefix.charAt(ones) == ALPHABET.charAt(0)) {
+			ones++;
+		}
+
+		List<BigInteger[]> intervals = new ArrayList<>();
+		BigInteger upper = BigInteger.ONE.shiftLeft(ADDRESS_BITS - 8 * ones);
+
+		if(ones == prefix.length()) {
+			intervals.add(new BigInteger[] { BigInteger.ONE, upper });
+			return intervals;
+		}
+
+		BigInteger lower = BigInteger.ONE.shiftLeft(ADDRESS_BITS - 8 * (ones + 1));
+		BigInteger value = BigInteger.ZERO;
+
+		for(int i = ones; i < prefix.length(); i++) {
+			int digit = ALPHABET.indexOf(prefix.charAt(i));
+
+			if(digit < 0) {
+				throw new IllegalArgumentException(String.format("prefix '%s' contains illegal character '%c'", prefix, prefix.charAt(i)));
+			}
+
+			value = value.multiply(BASE).add(BigInteger.valueOf(digit));
+		}
+
+		// one interval per number of digits of V
+		for(BigInteger scale = BigInteger.ONE; value.multiply(scale).compareTo(upper) < 0; scale = scale.multiply(BASE)) {
+			BigInteger from = value.multiply(scale).max(lower);
+			BigInteger to = value.add(BigInteger.ONE).multiply(scale).min(upper);
+
+			if(from.compareTo(to) < 0) {
+				intervals.add(new BigInteger[] { from, to });
+			}
+		}
+
+		return intervals;
+	}
+
+	// unsigned comparison of two 20 byte hashes
+	private static int compare(byte[] a, byte[] b) {
+		for(int i = 0; i < Hash160.HASH_LENGTH; i++) {
+			int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+
+			if(diff != 0) {
+				return diff;
+			}
+		}
+
+		return 0;
+	}
+
+	private static byte[] toHash(BigInteger value) {
+		byte[] bytes = value.toByteArray();
+		byte[] hash = new byte[Hash160.HASH_LENGTH];
+		int length = Math.min(bytes.length, Hash160.HASH_LENGTH);
+
+		System.arraycopy(bytes, bytes.length - length, hash, Hash160.HASH_LENGTH - length, length);
+		return hash;
+	}
+
+	/**
+	 * Inclusive hash160 range of an address number interval [from, to).
+	 */
+	private static final class Range {
+		private final byte[] low;
+		private final byte[] high;
+
+		Range(BigInteger from, BigInteger to) {
+			low = toHash(from.shiftRight(CHECKSUM_BITS));
+			high = toHash(to.subtract(BigInteger.ONE).shiftRight(CHECKSUM_BITS));
+		}
+	}
+
+	/**
+	 * Progress of a running search.
+	 */
+	public static final class Progress {
+		private final long candidates;
+		private final long millis;
+		private final double probability;
+
+		Progress(long candidates, long millis, double probability) {
+			this.candidates = candidates;
+			this.millis = millis;
+			this.probability = probability;
+		}
+
+		public long getCandidates() {
+			return candidates;
+		}
+
+		/**
+		 * Return the number of candidates per second so far.
+		 *
+		 * @return double
+		 *
+		 */
+		public double getRate() {
+			return millis > 0 ? 1000.0 * candidates / millis : 0.0;
+		}
+
+		/**
+		 * Return the expected number of seconds to a match. Candidates are independent,
+		 * the expectation does not shrink with the candidates already tried.
+		 *
+		 * @return double
+		 *
+		 */
+		public double getEtaSeconds() {
+			double rate = getRate();
+			return rate > 0 ? 1.0 / (probability * rate) : Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Return the probability that a match would have been found by now.
+		 *
+		 * @return double
+		 *
+		 */
+		public double getChance() {
+			return -Math.expm1(candidates * Math.log1p(-probability));
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d candidates, %.1f candidates/s, eta %s, chance so far %.1f%%",
+					candidates, getRate(), formatSeconds(getEtaSeconds()), 100.0 * getChance());
+		}
+	}
+
+	/**
+	 * Outcome of a search, the entropy of the matching wallet or null.
+	 */
+	public static final class Result {
+		private final byte[] entropy;
+		private final long candidates;
+		private final long millis;
+
+		Result(byte[] entropy, long candidates, long millis) {
+			this.entropy = entropy;
+			this.candidates = candidates;
+			this.millis = millis;
+		}
+
+		public boolean isFound() {
+			return entropy != null;
+		}
+
+		public byte[] getEntropy() {
+			return entropy;
+		}
+
+		public long getCandidates() {
+			return candidates;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+	}
+
+	/**
+	 * Format a duration for progress output, e.g. 2d 03:04:05.
+	 *
+	 * @param double seconds
+	 *
+	 * @return String
+	 *
+	 */
+	public static String formatSeconds(double seconds) {
+		if(Double.isInfinite(seconds) || Double.isNaN(seconds)) {
+			return "unknown";
+		}
+
+		if(seconds > 365.0 * 86400 * 1000) {
+			return String.format("%.1e years", seconds / (365.0 * 86400));
+		}
+
+		long s = (long) Math.ceil(seconds);
+		long days = s / 86400;
+		String time = String.format("%02d:%02d:%02d", (s / 3600) % 24, (s / 60) % 60, s % 60);
+
+		return days > 0 ? String.format("%dd %s", days, time) : time;
+	}
+}
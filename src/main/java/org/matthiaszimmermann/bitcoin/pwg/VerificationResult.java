@@ -0,0 +1,106 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.File;
+
+import org.json.JSONObject;
+
+/**
+ *
+ * VerificationResult.java : outcome of the verification of a single wallet file
+ *
+ */
+public final class VerificationResult {
+
+	public enum Status {
+		/** file is valid and its addresses match the decrypted seed */
+		OK,
+		/** file is missing, unreadable or does not follow the wallet file schema */
+		INVALID_FILE,
+		/** seed could not be decrypted, usually a wrong pass phrase */
+		DECRYPTION_FAILED,
+		/** addresses in the file do not match the addresses derived from the seed */
+		ADDRESS_MISMATCH,
+		/** any other failure */
+		ERROR
+	}
+
+	private final File file;
+	private final Status status;
+	private final String message;
+	private final String address;
+	private final long nanos;
+
+	VerificationResult(File file, Status status, String message, String address, long nanos) {
+		this.file = file;
+		this.status = status;
+		this.message = message;
+		this.address = address;
+		this.nanos = nanos;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public boolean isOk() {
+		return status == Status.OK;
+	}
+
+	/**
+	 * Return failure description, or null for verified files.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Return first receive address of a verified wallet file, or null.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Return verification time in milliseconds.
+	 *
+	 * @return double
+	 *
+	 */
+	public double getMillis() {
+		return nanos / 1_000_000.0;
+	}
+
+	/**
+	 * Return result as a single line JSON object for verification reports.
+	 *
+	 * @return String
+	 *
+	 */
+	public String toJsonLine() {
+		JSONObject obj = new JSONObject();
+
+		obj.put("file", file.getPath());
+		obj.put("status", status.name());
+		obj.put("millis", Math.round(getMillis() * 1000) / 1000.0);
+
+		if(address != null) {
+			obj.put("address", address);
+		}
+
+		if(message != null) {
+			obj.put("message", message);
+		}
+
+		return obj.toString();
+	}
+}
@@ -1,13 +1,14 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
+import java.security.InvalidKeyException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.crypto.ChildNumber;
 import org.bitcoinj.crypto.DeterministicKey;
 import org.bitcoinj.crypto.HDKeyDerivation;
 import org.bitcoinj.crypto.MnemonicCode;
@@ -15,7 +16,6 @@ import org.bitcoinj.crypto.MnemonicException;
 import org.bitcoinj.crypto.MnemonicException.MnemonicChecksumException;
 import org.bitcoinj.crypto.MnemonicException.MnemonicLengthException;
 import org.bitcoinj.crypto.MnemonicException.MnemonicWordException;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -33,9 +33,13 @@ public class Wallet {
 
 	public static final String JSON_VERSION = "version";
 	public static final String JSON_VERSION_VALUE = "1.0";
+	public static final String JSON_VERSION_BATCH_VALUE = "2.0";
 	
 	public static final String JSON_SEED = "seed";
 	public static final String JSON_IV = "iv";
+	public static final String JSON_SALT = "salt";
+	public static final String JSON_KDF_SALT = "kdfSalt";
+	public static final String JSON_KDF_ITERATIONS = "kdfIterations";
 	public static final String JSON_ACCOUNTS = "accounts";
 	public static final String JSON_PATH = "path";
 	public static final String JSON_CHAINS = "chains";
@@ -71,184 +75,167 @@ public class Wallet {
 	 */
 	public Wallet(MnemonicCode mc, NetworkParameters params, byte[] seed, String passphrase) throws MnemonicException.MnemonicLengthException {
 		wordList = mc.toMnemonic(seed);
-		init(params, seed, passphrase);
+		init(params, seed, passphrase, FixedBaseMultiplier.getInstance());
 	}
 	
+	/**
+	 * Constructor for wallet using a shared wordlist.
+	 *
+	 * @param Wordlist wordlist BIP39 wordlist
+	 * @param NetworkParameters params
+	 * @param byte[] seed seed for this wallet
+	 * @param String passphrase optional BIP39 passphrase
+	 *
+	 */
+	public Wallet(Wordlist wordlist, NetworkParameters params, byte[] seed, String passphrase) throws MnemonicException.MnemonicLengthException {
+		this(wordlist, params, seed, passphrase, FixedBaseMultiplier.getInstance());
+	}
+
+	/**
+	 * Constructor for wallet deriving its keys with the provided multiplier.
+	 *
+	 * @param Wordlist wordlist BIP39 wordlist
+	 * @param NetworkParameters params
+	 * @param byte[] seed seed for this wallet
+	 * @param String passphrase optional BIP39 passphrase
+	 * @param FixedBaseMultiplier multiplier multiplier for all derived public keys of the wallet
+	 *
+	 */
+	public Wallet(Wordlist wordlist, NetworkParameters params, byte[] seed, String passphrase, FixedBaseMultiplier multiplier) throws MnemonicException.MnemonicLengthException {
+		wordList = wordlist.toMnemonic(seed);
+		init(params, seed, passphrase, multiplier);
+	}
+
 	public Wallet(MnemonicCode mc, NetworkParameters params, List<String> words, String passphrase) throws MnemonicLengthException, MnemonicWordException, MnemonicChecksumException  {
 		wordList = words;
-		init(params, mc.toEntropy(wordList), passphrase);
+		init(params, mc.toEntropy(wordList), passphrase, FixedBaseMultiplier.getInstance());
 	}
 	
-	private void init(NetworkParameters params, byte[] seed, String passphrase) {
+	private void init(NetworkParameters params, byte[] seed, String passphrase, FixedBaseMultiplier multiplier) {
 		this.params = params;
 		this.seed = seed;
 		strPassphrase = passphrase;
-        byte[] hd_seed = MnemonicCode.toSeed(wordList, "");
+		byte[] hd_seed = Pbkdf2.bip39Seed(wordList, "");
 		dkKey = HDKeyDerivation.createMasterPrivateKey(hd_seed);
-		DeterministicKey dKey = HDKeyDerivation.deriveChildKey(dkKey, 44 | ChildNumber.HARDENED_BIT);
-		dkRoot = HDKeyDerivation.deriveChildKey(dKey, ChildNumber.HARDENED_BIT);
+		DerivationEngine purpose = new DerivationEngine(dkKey, multiplier).deriveEngine(44, true);
+		DerivationEngine root = purpose.deriveEngine(0, true);
+		dkRoot = root.getParent();
 
 		int nbAccounts = 1;
 		accounts = new ArrayList<Account>();
 		for(int i = 0; i < nbAccounts; i++) {
-			accounts.add(new Account(params, dkRoot, i));
+			accounts.add(new Account(params, root, i));
 		}
 
-		strPath = dKey.getPathAsString();
+		strPath = purpose.getParent().getPathAsString();
 	}
 
+	/**
+	 * Legacy constructor for an already parsed wallet file.
+	 * The object is serialized once more for the validating reader.
+	 *
+	 * @deprecated read the file with WalletJsonReader.read(File, NetworkParameters)
+	 * and use the WalletFile constructor, which builds no intermediate tree
+	 *
+	 */
+	@Deprecated
 	public Wallet(JSONObject jsonobj, String passPhrase, NetworkParameters params) throws Exception {
+		this(WalletJsonReader.read(jsonobj.toString(), params), passPhrase, params);
+	}
 
-		if(!jsonobj.has(JSON_VERSION)) {
-			throw new DecoderException("property 'version' missing in JSON object");
-		}
-		
-		if(!JSON_VERSION_VALUE.equals(jsonobj.getString(JSON_VERSION))) {
-			throw new DecoderException("unexpected wallet version in JSON object. expected " + JSON_VERSION_VALUE +  ", found " + jsonobj.getString(JSON_VERSION));
-		}
-
-		if(!jsonobj.has(JSON_SEED)) {
-			throw new DecoderException("property 'seed' missing in JSON object");
-		}
-
-		if(!jsonobj.has(JSON_IV)) {
-			throw new DecoderException("property 'iv' missing in JSON object");
-		}
+	/**
+	 * Constructor for a wallet restored from a wallet file.
+	 * Decrypts the seed and checks that the stored addresses match the derived ones.
+	 *
+	 * @param WalletFile walletFile validated wallet file content
+	 * @param String passPhrase pass phrase of the wallet file
+	 * @param NetworkParameters params
+	 *
+	 */
+	public Wallet(WalletFile walletFile, String passPhrase, NetworkParameters params) throws Exception {
+		this(walletFile, passPhrase, params, null);
+	}
 
-		if(!jsonobj.has(JSON_ACCOUNTS)) {
-			throw new DecoderException("property 'accounts' missing in JSON object");
-		}
+	/**
+	 * Constructor for a wallet restored from a wallet file, derived keys are looked up in the provided cache.
+	 *
+	 * @param WalletFile walletFile validated wallet file content
+	 * @param String passPhrase pass phrase of the wallet file
+	 * @param NetworkParameters params
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 *
+	 */
+	public Wallet(WalletFile walletFile, String passPhrase, NetworkParameters params, DerivedKeyCache cache) throws Exception {
+		this(walletFile, passPhrase, params, cache, FixedBaseMultiplier.getInstance());
+	}
 
-		String seedString = jsonobj.getString(JSON_SEED);
-		String ivString = jsonobj.getString(JSON_IV);
-		JSONArray jsonAccounts = jsonobj.getJSONArray(JSON_ACCOUNTS);
+	/**
+	 * Constructor for a wallet restored from a wallet file, keys are derived with the provided multiplier.
+	 *
+	 * @param WalletFile walletFile validated wallet file content
+	 * @param String passPhrase pass phrase of the wallet file
+	 * @param NetworkParameters params
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 * @param FixedBaseMultiplier multiplier multiplier for all derived public keys of the wallet
+	 *
+	 */
+	public Wallet(WalletFile walletFile, String passPhrase, NetworkParameters params, DerivedKeyCache cache, FixedBaseMultiplier multiplier) throws Exception {
+		EncryptedSeed encryptedSeed = walletFile.getSeed();
+		String seedString = encryptedSeed.getSeed();
 
-		if(jsonAccounts.length() != 1) {
-			throw new DecoderException("unexpected amount of 'accounts' in JSON object. expected 1, found " + jsonAccounts.length());
+		// version 2.0 seeds are always encrypted with a subkey of the batch key
+		if(encryptedSeed.isBatch()) {
+			seedString = decryptBatchSeed(encryptedSeed, passPhrase, cache);
 		}
-
-		JSONObject jsonAccount = jsonAccounts.getJSONObject(0);
-
 		// decrypt seed if we have a password
-		if(passPhrase != null && !passPhrase.isEmpty()) {
-			System.out.println("encrypted seed from wallet file: " + seedString);
-
-			AesUtility aes = new AesUtility(passPhrase);
-			seedString = aes.decrypt(seedString, ivString);
+		else if(passPhrase != null && !passPhrase.isEmpty()) {
+			AesUtility aes = new AesUtility(passPhrase, cache);
+			seedString = aes.decrypt(seedString, encryptedSeed.getIv());
 		}
 		
 		seed = AesUtility.base64ToBytes(seedString);
-		MnemonicCode mc = new MnemonicCode();
-		wordList = mc.toMnemonic(seed);
+		wordList = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT).toMnemonic(seed);
 		
-		init(params, seed, passPhrase);
+		init(params, seed, passPhrase, multiplier);
 		
-		verifyAccount(accounts.get(0), jsonAccount);
+		verifyAddresses(accounts.get(0), walletFile);
 	}
 
-	private void verifyAccount(Account account, JSONObject jsonAccount) throws Exception {
-
-		// verify that attributes exist
-		if(!jsonAccount.has(JSON_CHAINS)) {
-			throw new DecoderException("property 'chains' missing for account object in JSON object");
+	private static String decryptBatchSeed(EncryptedSeed encryptedSeed, String passPhrase, DerivedKeyCache cache) throws Exception {
+		if(passPhrase == null || passPhrase.isEmpty()) {
+			throw new InvalidKeyException("pass phrase required for wallet version " + JSON_VERSION_BATCH_VALUE);
 		}
 
-		JSONArray jsonChains = jsonAccount.getJSONArray(JSON_CHAINS);
+		byte[] kdfSalt = AesUtility.base64ToBytes(encryptedSeed.getKdfSalt());
+		byte[] salt = AesUtility.base64ToBytes(encryptedSeed.getSalt());
 
-		if(jsonChains.length() != 2) {
-			throw new DecoderException("unexpected amount of 'chains' in JSON object. expected 2, found " + jsonChains.length());
-		}
-
-		for(int i = 0; i < 2; i++) {
-			JSONObject chain = jsonChains.getJSONObject(i);
-
-			if(!chain.has(JSON_PATH)) {
-				throw new DecoderException("property 'path' missing for chain object in JSON object");
-			}
+		BatchKey batchKey = new BatchKey(passPhrase, kdfSalt, encryptedSeed.getKdfIterations(), cache);
+		byte[] key = batchKey.deriveWalletKey(salt);
+		batchKey.destroy();
 
-			String path = chain.getString(JSON_PATH);
+		AesUtility aes = new AesUtility(key);
+		Arrays.fill(key, (byte) 0);
 
-			if(path.equals(BIP_44_PATH_RECEIVE)) {
-				Chain receive = account.getReceive();
-				verifyChain(receive, chain);
-			}
-			else if(path.equals(BIP_44_PATH_CHANGE)) {
-				Chain change = account.getChange();
-				verifyChain(change, chain);
-			}
-			else {
-				throw new DecoderException(
-						String.format("unexpected value for 'path' for chain in JSON object. expected '%s' or '%s'. found '%s'", 
-								BIP_44_PATH_RECEIVE, BIP_44_PATH_CHANGE, path));
-			}
-		}
+		return aes.decrypt(encryptedSeed.getSeed(), encryptedSeed.getIv());
 	}
 
+	private void verifyAddresses(Account account, WalletFile walletFile) throws DecoderException {
+		for(WalletFile.Entry entry: walletFile.getAddresses()) {
+			Chain chain = entry.isReceive() ? account.getReceive() : account.getChange();
+			Address address = chain.getAddressAt(entry.getIndex());
 
-	private void verifyChain(Chain chain, JSONObject jsonChain) throws Exception {
-
-		String chainPath = jsonChain.getString(JSON_PATH);
-
-		if(!jsonChain.has(JSON_ADDRESSES)) {
-			throw new DecoderException("property 'addresses' missing for chain object in JSON object");
-		}
-
-		JSONArray jsonAddresses = jsonChain.getJSONArray(JSON_ADDRESSES);
-
-		if(jsonAddresses.length() != 2) {
-			throw new DecoderException("unexpected amount of 'addresses' in chain JSON object. expected 2, found " + jsonAddresses.length());
-		}
-
-		for(int i = 0; i < 2; i++) {
-			JSONObject jsonAddress = jsonAddresses.getJSONObject(i);
-
-			if(!jsonAddress.has(JSON_PATH)) {
-				throw new DecoderException("property 'path' missing for chain address object in JSON object");
+			if(!entry.matches(address.getPubKeyHash())) {
+				throw new DecoderException(String.format("JSON chain address does not match expected address. expected: %s, found %s", 
+						address.getAddressString(), entry.getAddress()));
 			}
 
-			String jsonPath = jsonAddress.getString(JSON_PATH);
-
-			if(!jsonPath.startsWith(chainPath)) {
-				throw new DecoderException(String.format("property 'path' has unexpected start. expected '%s', found '%s", chainPath, jsonPath));
-			}
-
-			if(jsonPath.endsWith("/0")) {
-				verifyAccount(chain.getAddressAt(0), jsonAddress);
-			}
-			else if(jsonPath.endsWith("/1")) {
-				verifyAccount(chain.getAddressAt(1), jsonAddress);
-			}
-			else {
-				throw new DecoderException(String.format("unexpected end for 'path'. expected '/0' or '/1', found '%s", 
-						jsonPath.substring(jsonPath.length() - 2)));
+			if(!entry.getPath().equals(address.getPath())) {
+				throw new DecoderException(String.format("JSON chain path does not match expected path. expected: %s, found %s", 
+						address.getPath(), entry.getPath()));
 			}
-
 		}
 	}
 
-	private void verifyAccount(Address address, JSONObject jsonAddress) throws Exception {
-
-		if(!jsonAddress.has(JSON_ADDRESS)) {
-			throw new DecoderException("property 'address' missing for chain address object in JSON object");
-		}
-
-		String jsonPath = jsonAddress.getString(JSON_PATH);
-		String jsonAddr = jsonAddress.getString(JSON_ADDRESS);
-
-		if(!jsonAddr.equals(address.getAddressString())) {
-			throw new DecoderException(String.format("JSON chain address does not match expected address. expected: %s, found %s", 
-					address.getAddressString(), jsonAddr));
-		}
-
-		if(!jsonPath.equals(address.getPath())) {
-			throw new DecoderException(String.format("JSON chain path does not match expected path. expected: %s, found %s", 
-					address.getPath(), jsonPath));
-		}
-
-		System.out.println(String.format("address successfully verified: %s %s", jsonPath, jsonAddr));
-	}
-
-
 	/**
 	 * Constructor for watch-only wallet initialized from submitted XPUB(s).
 	 *
@@ -361,42 +348,93 @@ public class Wallet {
 	 *
 	 */
 	public JSONObject toJSON() {
-		try {
-			JSONObject obj = new JSONObject();
-
-			// add version info
-			obj.put(JSON_VERSION, JSON_VERSION_VALUE);
-			
-			// add seed info
-			if(seed != null) {
-				if(strPassphrase != null && strPassphrase.length() > 0) {
-					try {
-						AesUtility aes = new AesUtility(strPassphrase);
-						obj.put(JSON_SEED, aes.encrypt(AesUtility.bytesToBase64(seed)));
-						obj.put(JSON_IV, aes.getIv());
-					}
-					catch (Exception e) {
-						new RuntimeException(e.getMessage());
-					}
-				}
-				else {
-					obj.put(JSON_SEED, AesUtility.bytesToBase64(seed));
-					obj.put(JSON_IV, "");
-				}
-			}
-
-			// add account info
-			JSONArray accts = new JSONArray();
-			for(Account acct : accounts) {
-				accts.put(acct.toJSON());
-			}
+		return toJSON(null);
+	}
 
-			obj.put(JSON_ACCOUNTS, accts);
+	/**
+	 * Write entire wallet to JSONObject.
+	 * With a batch key and a pass phrase the seed is encrypted with a per wallet 
+	 * subkey of the batch key (version 2.0), otherwise the version 1.0 format is used.
+	 *
+	 * @param BatchKey batchKey key derived from the wallet pass phrase, may be null
+	 *
+	 * @return JSONObject
+	 *
+	 */
+	public JSONObject toJSON(BatchKey batchKey) {
+		return toJSON(batchKey, null);
+	}
 
-			return obj;
+	/**
+	 * Write entire wallet to JSONObject, looking up the version 1.0 seed key in the provided cache.
+	 *
+	 * @param BatchKey batchKey key derived from the wallet pass phrase, may be null
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 *
+	 * @return JSONObject
+	 *
+	 */
+	public JSONObject toJSON(BatchKey batchKey, DerivedKeyCache cache) {
+		try {
+			return new JSONObject(WalletJsonWriter.toString(this, encryptSeed(batchKey, cache), 0));
 		}
 		catch(JSONException ex) {
 			throw new RuntimeException(ex);
 		}
 	}
+
+	/**
+	 * Encrypt the seed for a wallet file. 
+	 * Each call uses a fresh IV (and salt for version 2.0).
+	 *
+	 * @param BatchKey batchKey key derived from the wallet pass phrase, may be null
+	 *
+	 * @return EncryptedSeed seed properties, null for wallets without seed
+	 *
+	 */
+	public EncryptedSeed encryptSeed(BatchKey batchKey) {
+		return encryptSeed(batchKey, null);
+	}
+
+	/**
+	 * Encrypt the seed for a wallet file, looking up the version 1.0 seed key in the provided cache.
+	 * Wallets serialized repeatedly with the same pass phrase then derive the key once.
+	 *
+	 * @param BatchKey batchKey key derived from the wallet pass phrase, may be null
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 *
+	 * @return EncryptedSeed seed properties, null for wallets without seed
+	 *
+	 */
+	public EncryptedSeed encryptSeed(BatchKey batchKey, DerivedKeyCache cache) {
+		if(seed == null) {
+			return null;
+		}
+
+		boolean encrypted = strPassphrase != null && strPassphrase.length() > 0;
+
+		if(!encrypted) {
+			return new EncryptedSeed(AesUtility.bytesToBase64(seed), "");
+		}
+
+		try {
+			if(batchKey != null) {
+				byte[] salt = batchKey.newSalt();
+				byte[] key = batchKey.deriveWalletKey(salt);
+				AesUtility aes = new AesUtility(key);
+				Arrays.fill(key, (byte) 0);
+
+				String encryptedSeed = aes.encrypt(AesUtility.bytesToBase64(seed));
+				return new EncryptedSeed(encryptedSeed, aes.getIv(), AesUtility.bytesToBase64(salt), 
+						AesUtility.bytesToBase64(batchKey.getKdfSalt()), batchKey.getIterationCount());
+			}
+
+			AesUtility aes = new AesUtility(strPassphrase, cache);
+			String encryptedSeed = aes.encrypt(AesUtility.bytesToBase64(seed));
+			return new EncryptedSeed(encryptedSeed, aes.getIv());
+		}
+		catch (Exception e) {
+			throw new RuntimeException(e.getMessage());
+		}
+	}
 }
@@ -1,7 +1,7 @@
 package org.matthiaszimmermann.bitcoin.pwg;
 
+import java.io.File;
 import java.io.IOException;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -10,86 +10,95 @@ import java.util.Locale;
 import org.apache.commons.codec.DecoderException;
 import org.bitcoinj.core.AddressFormatException;
 import org.bitcoinj.core.NetworkParameters;
-import org.bitcoinj.crypto.MnemonicCode;
 import org.bitcoinj.crypto.MnemonicException;
 import org.bitcoinj.params.MainNetParams;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
  *
- * WalletFactory.java : singleton class for creating/restoring/reading BIP44 HD wallet
+ * WalletFactory.java : immutable factory for creating/restoring/reading BIP44 HD wallet
  *
  * BIP44 extension of Bitcoinj
  *
+ * A factory holds no wallet state, each call returns the created or restored wallet.
+ * Instances may therefore be shared by any number of threads.
+ *
  */
-public class WalletFactory {
+public final class WalletFactory {
 
 	public static final String BIP39_ENGLISH_SHA256 = "ad90bf3beb7b0eb7e5acd74727dc0da96e0a280a258354e7293fb7e211ac03db";
 	public static final int NUM_ACCOUNTS = 1;
+	public static final Locale LOCALE_DEFAULT = new Locale("en", "US");
 
-	private static WalletFactory instance = null;
-	private static List<Wallet> wallets = null;
-	private static Wallet watch_only_wallet = null;
+	private static final WalletFactory instance = new WalletFactory(LOCALE_DEFAULT, null);
 
-	private static Locale locale = null;
+	private final Locale locale;
+	private final NetworkParameters params;
+	private final FixedBaseMultiplier multiplier;
 
-	private WalletFactory()	{ ; }
+	private WalletFactory(Locale locale, FixedBaseMultiplier multiplier)	{
+		this.locale = locale;
+		this.params = MainNetParams.get();
+		this.multiplier = multiplier;
+	}
 
 	/**
-	 * Return instance for a full wallet including seed and private keys.
+	 * Return the shared factory instance using locale 'en_US'.
 	 *
 	 * @return WalletFactory
 	 *
 	 */
 	public static WalletFactory getInstance() {
-
-		if (instance == null) {
-			locale = new Locale("en", "US");
-			wallets = new ArrayList<Wallet>();
-			instance = new WalletFactory();
-		}
-
 		return instance;
 	}
 
 	/**
-	 * Return instance for a watch only wallet. No seed, no private keys.
+	 * Return a factory instance for the provided locale. Defaults to 'en_US'
 	 *
-	 * @param  Context ctx app context
-	 * @param  String[] xpub restore these accounts only
+	 * @param  Locale locale to be used.
 	 *
 	 * @return WalletFactory
 	 *
 	 */
-	public static WalletFactory getInstance(String[] xpub) throws AddressFormatException {
-
-		if(instance == null) {
-			locale = new Locale("en", "US");
-			wallets = new ArrayList<Wallet>();
-			instance = new WalletFactory();
+	public static WalletFactory getInstance(Locale locale) {
+		if(locale == null || LOCALE_DEFAULT.equals(locale)) {
+			return instance;
 		}
 
-		if(watch_only_wallet == null) {
-			watch_only_wallet = new Wallet(MainNetParams.get(), xpub);
-		}
+		return new WalletFactory(locale, null);
+	}
 
-		return instance;
+	/**
+	 * Return a factory instance for the provided locale whose wallets derive their keys with the provided multiplier.
+	 *
+	 * @param  Locale locale to be used, 'en_US' if null
+	 * @param  FixedBaseMultiplier multiplier multiplier for the derived public keys, the default one if null
+	 *
+	 * @return WalletFactory
+	 *
+	 */
+	public static WalletFactory getInstance(Locale locale, FixedBaseMultiplier multiplier) {
+		return new WalletFactory(locale != null ? locale : LOCALE_DEFAULT, multiplier);
 	}
 
 	/**
-	 * Set Locale. Defaults to 'en_US'
+	 * Return locale of this factory.
 	 *
-	 * @param  Locale locale to be used.
+	 * @return Locale
 	 *
 	 */
-	public void setLocale(Locale loc)	{
-		if(loc != null)	{
-			locale = loc;
-		}
-		else	{
-			locale = new Locale("en", "US");
-		}
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * Return multiplier for the derived public keys of the wallets of this factory.
+	 *
+	 * @return FixedBaseMultiplier
+	 *
+	 */
+	public FixedBaseMultiplier getMultiplier() {
+		return multiplier != null ? multiplier : FixedBaseMultiplier.getInstance();
 	}
 
 	/**
@@ -104,8 +113,6 @@ public class WalletFactory {
 	 */
 	public Wallet newWallet(int nbWords, String passphrase, int nbAccounts) throws IOException, MnemonicException.MnemonicLengthException   {
 
-		Wallet hdw = null;
-
 		if((nbWords % 3 != 0) || (nbWords < 12 || nbWords > 24)) {
 			nbWords = 12;
 		}
@@ -113,23 +120,27 @@ public class WalletFactory {
 		// len == 16 (12 words), len == 24 (18 words), len == 32 (24 words)
 		int len = (nbWords / 3) * 4;
 
-		if(passphrase == null) {
-			passphrase = "";
-		}
+		byte seed[] = EntropyService.getInstance().nextSeed(len);
 
-		NetworkParameters params = MainNetParams.get();
-
-		SecureRandom random = new SecureRandom();
-		byte seed[] = new byte[len];
-		random.nextBytes(seed);
+		return newWallet(seed, passphrase);
+	}
 
-		MnemonicCode mc = new MnemonicCode();
-		hdw = new Wallet(mc, params, seed, passphrase);
+	/**
+	 * Create new wallet from the provided entropy.
+	 *
+	 * @param  byte[] seed entropy for the mnemonic (16, 24 or 32 bytes)
+	 * @param  String passphrase optional BIP39 passphrase
+	 *
+	 * @return Wallet
+	 *
+	 */
+	public Wallet newWallet(byte[] seed, String passphrase) throws IOException, MnemonicException.MnemonicLengthException   {
 
-		wallets.clear();
-		wallets.add(hdw);
+		if(passphrase == null) {
+			passphrase = "";
+		}
 
-		return hdw;
+		return new Wallet(Wordlist.forLocale(locale), params, seed, passphrase, getMultiplier());
 	}
 
 	/**
@@ -150,137 +161,104 @@ public class WalletFactory {
 			passphrase = "";
 		}
 
-		NetworkParameters params = MainNetParams.get();
-
-		List<String> words = null;
-
-		MnemonicCode mc = null;
-		mc = new MnemonicCode();
-
+		Wordlist wordlist = Wordlist.forLocale(locale);
 		byte[] seed = null;
+
 		if(data.startsWith("xpub")) {
 			String[] xpub = data.split(":");
 			hdw = new Wallet(params, xpub);
 		}
 		else if(data.length() % 4 == 0 && !data.contains(" ")) {
 			seed = AesUtility.base64ToBytes(data);
-			hdw = new Wallet(mc, params, seed, passphrase);
+			hdw = new Wallet(wordlist, params, seed, passphrase, getMultiplier());
 		}
 		else if(locale.toString().equals("en_US")) {
-			data = data.replaceAll("[^a-z]+", " ");             // only use for BIP39 English
-			words = Arrays.asList(data.trim().split("\\s+"));
-			seed = mc.toEntropy(words);
-			hdw = new Wallet(mc, params, seed, passphrase);
+			data = data.toLowerCase(Locale.ROOT).replaceAll("[^a-z]+", " ");             // only use for BIP39 English
+			seed = wordlist.toEntropy(matchWords(wordlist, data));
+			hdw = new Wallet(wordlist, params, seed, passphrase, getMultiplier());
 		}
 		else {
-			words = Arrays.asList(data.trim().split("\\s+"));
-			seed = mc.toEntropy(words);
-			hdw = new Wallet(mc, params, seed, passphrase);
+			seed = wordlist.toEntropy(Arrays.asList(data.trim().split("\\s+")));
+			hdw = new Wallet(wordlist, params, seed, passphrase, getMultiplier());
 		}
 
-		wallets.clear();
-		wallets.add(hdw);
-
 		return hdw;
 	}
 
+	// english words may be abbreviated to exactly their first four letters, as written on paper backups
+	private static List<String> matchWords(Wordlist wordlist, String data) {
+		List<String> words = new ArrayList<>();
+
+		for(String typed: data.trim().split("\\s+")) {
+			String word = wordlist.match(typed);
+			words.add(word != null ? word : typed);
+		}
+
+		return words;
+	}
+
 	/**
-	 * Get wallet for this instance.
+	 * Restore watch only wallet. No seed, no private keys.
+	 *
+	 * @param  String[] xpub restore these accounts only
 	 *
 	 * @return Wallet
 	 *
 	 */
-	public Wallet get() throws IOException, MnemonicException.MnemonicLengthException {
-
-		if(wallets.size() < 1) {
-			wallets.clear();
-			wallets.add(newWallet(12, "", 1));
-		}
-
-		return wallets.get(0);
+	public Wallet restoreWatchOnlyWallet(String[] xpub) throws AddressFormatException {
+		return new Wallet(params, xpub);
 	}
 
 	/**
-	 * Set wallet for this instance.
+	 * Restore wallet from a wallet file, the file is read by the streaming reader.
+	 *
+	 * @param  String fileName path to the wallet file
+	 * @param  String passPhrase pass phrase of the wallet file
 	 *
-	 * @param  Wallet wallet
+	 * @return Wallet
 	 *
 	 */
-	public void set(Wallet wallet)	{
-
-		if(wallet != null)	{
-			wallets.clear();
-			wallets.add(wallet);
-		}
-
+	public Wallet restoreWalletFromJSON(String fileName, String passPhrase) throws Exception {
+		WalletFile walletFile = WalletJsonReader.read(new File(fileName), params);
+		return restoreWallet(walletFile, passPhrase);
 	}
-
+	
 	/**
-	 * Return watch only wallet for this instance.
+	 * Restore wallet from an already parsed wallet file.
+	 * The object is serialized once more for the validating reader, prefer the file name variant.
+	 *
+	 * @param  JSONObject obj wallet file content
+	 * @param  String passPhrase pass phrase of the wallet file
 	 *
 	 * @return Wallet
 	 *
 	 */
-	public Wallet getWatchOnlyWallet()   {
-		return watch_only_wallet;
+	public Wallet restoreWalletFromJSON(JSONObject obj, String passPhrase) throws Exception {
+		return restoreWallet(WalletJsonReader.read(obj.toString(), params), passPhrase);
 	}
 
 	/**
-	 * Set watch only wallet for this instance.
+	 * Restore wallet from validated wallet file content.
 	 *
-	 * @param  Wallet wallet
+	 * @param  WalletFile walletFile content read by WalletJsonReader
+	 * @param  String passPhrase pass phrase of the wallet file
+	 *
+	 * @return Wallet
 	 *
 	 */
-	public void setWatchOnlyWallet(Wallet wallet)   {
-		watch_only_wallet = wallet;
-	}
+	public Wallet restoreWallet(WalletFile walletFile, String passPhrase) throws Exception {
+		Wallet wallet = new Wallet(walletFile, passPhrase, params, null, getMultiplier());
 
-	public Wallet restoreWalletFromJSON(String fileName, String passPhrase) throws Exception {
-		JSONObject obj = readJsonWalletFile(fileName);
-		return restoreWalletFromJSON(obj, passPhrase);
-	}
-	
-	public Wallet restoreWalletFromJSON(JSONObject obj, String passPhrase) throws Exception {
-		NetworkParameters params = MainNetParams.get();
-		Wallet wallet = new Wallet(obj, passPhrase, params);
+		for(WalletFile.Entry entry: walletFile.getAddresses()) {
+			log(String.format("address successfully verified: %s %s", entry.getPath(), entry.getAddress()));
+		}
 
 		log("mnemonics: " + wallet.getMnemonic());
 		log("address: " + wallet.getAddress().getAddressString());
-		
-		wallets.clear();
-		wallets.add(wallet);
 
 		return wallet;
 	}
 
-	private JSONObject readJsonWalletFile(String fileName) throws Exception {
-
-		// verify wallet is not empty
-		String jsonString = FileUtility.readTextFile(fileName);
-		if(jsonString.isEmpty()) {
-			throw new JSONException("empty wallet file " + fileName);
-		}
-
-		// convert wallet file string to json object
-		JSONObject node = new JSONObject(jsonString);
-
-		// check and extract seed
-		if(!node.has(Wallet.JSON_VERSION)) {
-			throw new JSONException("wallet file has no version attribute " + fileName);
-		}
-
-		// check and extract seed
-		if(!node.has(Wallet.JSON_SEED)) {
-			throw new JSONException("wallet file has no seed attribute " + fileName);
-		}
-
-		if(!node.has(Wallet.JSON_IV)) {
-			throw new JSONException("wallet file has no iv attribute " + fileName);
-		}
-		
-		return node;
-	}
-
 	private void log(String string) {
 		System.out.println(string);
 	}
@@ -0,0 +1,91 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * WalletFile.java : validated content of a wallet file
+ *
+ * Produced by WalletJsonReader. The structure, all paths and all addresses of the
+ * file have been checked, the seed has not been decrypted yet.
+ *
+ */
+public final class WalletFile {
+
+	private final EncryptedSeed seed;
+	private final List<Entry> addresses;
+
+	WalletFile(EncryptedSeed seed, List<Entry> addresses) {
+		this.seed = seed;
+		this.addresses = Collections.unmodifiableList(addresses);
+	}
+
+	/**
+	 * Return version and (encrypted) seed properties of the file.
+	 *
+	 * @return EncryptedSeed
+	 *
+	 */
+	public EncryptedSeed getSeed() {
+		return seed;
+	}
+
+	public String getVersion() {
+		return seed.getVersion();
+	}
+
+	/**
+	 * Return the addresses stored in the file, receive and change chain.
+	 *
+	 * @return List<Entry>
+	 *
+	 */
+	public List<Entry> getAddresses() {
+		return addresses;
+	}
+
+	/**
+	 * Address stored in a wallet file, decoded to its hash160.
+	 */
+	public static final class Entry {
+		private final String path;
+		private final String address;
+		private final byte[] hash160;
+		private final boolean receive;
+		private final int index;
+
+		Entry(String path, String address, byte[] hash160, boolean receive, int index) {
+			this.path = path;
+			this.address = address;
+			this.hash160 = hash160;
+			this.receive = receive;
+			this.index = index;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getAddress() {
+			return address;
+		}
+
+		public byte[] getHash160() {
+			return hash160.clone();
+		}
+
+		boolean matches(byte[] pubKeyHash) {
+			return Arrays.equals(hash160, pubKeyHash);
+		}
+
+		public boolean isReceive() {
+			return receive;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+	}
+}
@@ -0,0 +1,648 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.codec.DecoderException;
+import org.bitcoinj.core.NetworkParameters;
+
+/**
+ *
+ * WalletJsonReader.java : streaming, fail fast reader for wallet files
+ *
+ * A pull parser that reads the wallet document character by character and checks
+ * the complete schema while reading: versions, required properties, base64 values,
+ * the single account with its receive and change chain, every path and every address.
+ * Addresses are decoded to their hash160. No key derivation or decryption happens
+ * here, so corrupt or foreign files are rejected before any expensive crypto runs.
+ *
+ */
+public class WalletJsonReader {
+
+	public static final int STRING_LENGTH_MAX = 4096;
+	public static final int NESTING_DEPTH_MAX = 16;
+
+	/** upper bound for the PBKDF2 rounds of a batch wallet file, a foreign file can not stall a verification run */
+	public static final int KDF_ITERATIONS_MAX = 4 * BatchKey.ITERATION_COUNT;
+
+	private static final int AES_BLOCK_SIZE = 16;
+	private static final int HASH160_LENGTH = 20;
+
+	private final Reader in;
+	private final NetworkParameters params;
+
+	private int peeked = -2;
+	private int position = 0;
+
+	/**
+	 * Constructor for a reader.
+	 *
+	 * @param Reader in wallet file content
+	 * @param NetworkParameters params network of the stored addresses
+	 *
+	 */
+	public WalletJsonReader(Reader in, NetworkParameters params) {
+		this.in = in;
+		this.params = params;
+	}
+
+	/**
+	 * Read and validate a wallet file.
+	 *
+	 * @param File file
+	 * @param NetworkParameters params
+	 *
+	 * @return WalletFile
+	 *
+	 */
+	public static WalletFile read(File file, NetworkParameters params) throws IOException, DecoderException {
+		try(Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			return new WalletJsonReader(reader, params).read();
+		}
+	}
+
+	/**
+	 * Read and validate a wallet document.
+	 *
+	 * @param String json
+	 * @param NetworkParameters params
+	 *
+	 * @return WalletFile
+	 *
+	 */
+	public static WalletFile read(String json, NetworkParameters params) throws DecoderException {
+		try {
+			return new WalletJsonReader(new StringReader(json), params).read();
+		}
+		catch (IOException e) {
+			throw new DecoderException(e);
+		}
+	}
+
+	/**
+	 * Read and validate the wallet document.
+	 *
+	 * @return WalletFile
+	 *
+	 */
+	public WalletFile read() throws IOException, DecoderException {
+		if(peekToken() < 0) {
+			throw new DecoderException("empty wallet file");
+		}
+
+		String version = null;
+		String seed = null;
+		String iv = null;
+		String salt = null;
+		String kdfSalt = null;
+		int kdfIterations = 0;
+		List<WalletFile.Entry> addresses = null;
+		Set<String> names = new HashSet<>();
+
+		expect('{');
+
+		if(!consume('}')) {
+			do {
+				String name = readName(names);
+
+				switch(name) {
+				case Wallet.JSON_VERSION:
+					version = readString();
+
+					if(!Wallet.JSON_VERSION_VALUE.equals(version) && !Wallet.JSON_VERSION_BATCH_VALUE.equals(version)) {
+						throw new DecoderException("unexpected wallet version in JSON object. expected " + Wallet.JSON_VERSION_VALUE + " or " + Wallet.JSON_VERSION_BATCH_VALUE + ", found " + version);
+					}
+					break;
+				case Wallet.JSON_SEED: seed = readString(); break;
+				case Wallet.JSON_IV: iv = readString(); break;
+				case Wallet.JSON_SALT: salt = readString(); break;
+				case Wallet.JSON_KDF_SALT: kdfSalt = readString(); break;
+				case Wallet.JSON_KDF_ITERATIONS: kdfIterations = readInt(); break;
+				case Wallet.JSON_ACCOUNTS: addresses = readAccounts(); break;
+				default: skipValue(0);
+				}
+			}
+			while(consume(','));
+
+			expect('}');
+		}
+
+		if(peekToken() >= 0) {
+			throw error("unexpected content after wallet object");
+		}
+
+		require(version, Wallet.JSON_VERSION);
+		require(seed, Wallet.JSON_SEED);
+		require(iv, Wallet.JSON_IV);
+		require(addresses, Wallet.JSON_ACCOUNTS);
+
+		EncryptedSeed encryptedSeed = null;
+
+		if(Wallet.JSON_VERSION_BATCH_VALUE.equals(version)) {
+			require(salt, Wallet.JSON_SALT);
+			require(kdfSalt, Wallet.JSON_KDF_SALT);
+
+			if(kdfIterations < 1) {
+				throw new DecoderException("property 'kdfIterations' missing or not positive in JSON object");
+			}
+
+			if(kdfIterations > KDF_ITERATIONS_MAX) {
+				throw new DecoderException(String.format("property 'kdfIterations' in JSON object exceeds the maximum of %d: %d", KDF_ITERATIONS_MAX, kdfIterations));
+			}
+
+			checkBase64(salt, Wallet.JSON_SALT, 0);
+			checkBase64(kdfSalt, Wallet.JSON_KDF_SALT, 0);
+			checkBase64(iv, Wallet.JSON_IV, AES_BLOCK_SIZE);
+			checkCipherText(seed);
+
+			encryptedSeed = new EncryptedSeed(seed, iv, salt, kdfSalt, kdfIterations);
+		}
+		else {
+			if(iv.isEmpty()) {
+				checkBase64(seed, Wallet.JSON_SEED, 0);
+			}
+			else {
+				checkBase64(iv, Wallet.JSON_IV, AES_BLOCK_SIZE);
+				checkCipherText(seed);
+			}
+
+			encryptedSeed = new EncryptedSeed(seed, iv);
+		}
+
+		return new WalletFile(encryptedSeed, addresses);
+	}
+
+	private List<WalletFile.Entry> readAccounts() throws IOException, DecoderException {
+		expect('[');
+
+		if(consume(']')) {
+			throw new DecoderException("unexpected amount of 'accounts' in JSON object. expected 1, found 0");
+		}
+
+		List<WalletFile.Entry> addresses = readAccount();
+
+		if(consume(',')) {
+			throw new DecoderException("unexpected amount of 'accounts' in JSON object. expected 1, found more");
+		}
+
+		expect(']');
+
+		return addresses;
+	}
+
+	private List<WalletFile.Entry> readAccount() throws IOException, DecoderException {
+		List<WalletFile.Entry> addresses = null;
+		Set<String> names = new HashSet<>();
+
+		expect('{');
+
+		if(!consume('}')) {
+			do {
+				String name = readName(names);
+
+				if(Wallet.JSON_CHAINS.equals(name)) {
+					addresses = readChains();
+				}
+				else {
+					skipValue(0);
+				}
+			}
+			while(consume(','));
+
+			expect('}');
+		}
+
+		if(addresses == null) {
+			throw new DecoderException("property 'chains' missing for account object in JSON object");
+		}
+
+		return addresses;
+	}
+
+	private List<WalletFile.Entry> readChains() throws IOException, DecoderException {
+		List<WalletFile.Entry> addresses = new ArrayList<>();
+		Set<String> paths = new HashSet<>();
+		int count = 0;
+
+		expect('[');
+
+		if(!consume(']')) {
+			do {
+				if(++count > 2) {
+					throw new DecoderException("unexpected amount of 'chains' in JSON object. expected 2, found more");
+				}
+
+				readChain(addresses, paths);
+			}
+			while(consume(','));
+
+			expect(']');
+		}
+
+		if(count != 2) {
+			throw new DecoderException("unexpected amount of 'chains' in JSON object. expected 2, found " + count);
+		}
+
+		return addresses;
+	}
+
+	private void readChain(List<WalletFile.Entry> addresses, Set<String> chainPaths) throws IOException, DecoderException {
+		String path = null;
+		List<String[]> entries = null;
+		Set<String> names = new HashSet<>();
+
+		expect('{');
+
+		if(!consume('}')) {
+			do {
+				String name = readName(names);
+
+				if(Wallet.JSON_PATH.equals(name)) {
+					path = readString();
+				}
+				else if(Wallet.JSON_ADDRESSES.equals(name)) {
+					entries = readAddresses();
+				}
+				else {
+					skipValue(0);
+				}
+			}
+			while(consume(','));
+
+			expect('}');
+		}
+
+		if(path == null) {
+			throw new DecoderException("property 'path' missing for chain object in JSON object");
+		}
+
+		if(entries == null) {
+			throw new DecoderException("property 'addresses' missing for chain object in JSON object");
+		}
+
+		boolean receive = Wallet.BIP_44_PATH_RECEIVE.equals(path);
+
+		if(!receive && !Wallet.BIP_44_PATH_CHANGE.equals(path)) {
+			throw new DecoderException(
+					String.format("unexpected value for 'path' for chain in JSON object. expected '%s' or '%s'. found '%s'",
+							Wallet.BIP_44_PATH_RECEIVE, Wallet.BIP_44_PATH_CHANGE, path));
+		}
+
+		if(!chainPaths.add(path)) {
+			throw new DecoderException(String.format("duplicate chain '%s' in JSON object", path));
+		}
+
+		Set<String> addressPaths = new HashSet<>();
+
+		for(String[] entry: entries) {
+			String addressPath = entry[0];
+			int index = -1;
+
+			if(addressPath.equals(path + "/0")) {
+				index = 0;
+			}
+			else if(addressPath.equals(path + "/1")) {
+				index = 1;
+			}
+			else {
+				throw new DecoderException(String.format("unexpected 'path' for address of chain '%s', found '%s'", path, addressPath));
+			}
+
+			if(!addressPaths.add(addressPath)) {
+				throw new DecoderException(String.format("duplicate address path '%s' in JSON object", addressPath));
+			}
+
+			addresses.add(new WalletFile.Entry(addressPath, entry[1], decodeAddress(entry[1]), receive, index));
+		}
+	}
+
+	private List<String[]> readAddresses() throws IOException, DecoderException {
+		List<String[]> entries = new ArrayList<>();
+
+		expect('[');
+
+		if(!consume(']')) {
+			do {
+				if(entries.size() == 2) {
+					throw new DecoderException("unexpected amount of 'addresses' in chain JSON object. expected 2, found more");
+				}
+
+				entries.add(readAddress());
+			}
+			while(consume(','));
+
+			expect(']');
+		}
+
+		if(entries.size() != 2) {
+			throw new DecoderException("unexpected amount of 'addresses' in chain JSON object. expected 2, found " + entries.size());
+		}
+
+		return entries;
+	}
+
+	private String[] readAddress() throws IOException, DecoderException {
+		String path = null;
+		String address = null;
+		Set<String> names = new HashSet<>();
+
+		expect('{');
+
+		if(!consume('}')) {
+			do {
+				String name = readName(names);
+
+				if(Wallet.JSON_PATH.equals(name)) {
+					path = readString();
+				}
+				else if(Wallet.JSON_ADDRESS.equals(name)) {
+					address = readString();
+				}
+				else {
+					skipValue(0);
+				}
+			}
+			while(consume(','));
+
+			expect('}');
+		}
+
+		if(path == null) {
+			throw new DecoderException("property 'path' missing for chain address object in JSON object");
+		}
+
+		if(address == null) {
+			throw new DecoderException("property 'address' missing for chain address object in JSON object");
+		}
+
+		return new String [] { path, address };
+	}
+
+	private byte[] decodeAddress(String address) throws DecoderException {
+		byte[] versioned = new byte[Base58Check.ADDRESS_LENGTH];
+		int status = Base58Check.decode(address, versioned, Base58Check.ADDRESS_LENGTH);
+
+		if(status == Base58Check.INVALID_LENGTH) {
+			throw new DecoderException(String.format("address '%s' is not a pay to public key hash address of network %s", address, params.getId()));
+		}
+
+		if(status != Base58Check.OK) {
+			throw new DecoderException(String.format("invalid address '%s': %s", address, Base58Check.describe(status)));
+		}
+
+		if((versioned[0] & 0xFF) != params.getAddressHeader()) {
+			throw new DecoderException(String.format("address '%s' is not a pay to public key hash address of network %s", address, params.getId()));
+		}
+
+		byte[] hash160 = new byte[HASH160_LENGTH];
+		System.arraycopy(versioned, 1, hash160, 0, HASH160_LENGTH);
+
+		return hash160;
+	}
+
+	private static void require(Object value, String name) throws DecoderException {
+		if(value == null) {
+			throw new DecoderException(String.format("property '%s' missing in JSON object", name));
+		}
+	}
+
+	private static void checkBase64(String value, String name, int length) throws DecoderException {
+		try {
+			byte[] bytes = Base64.getDecoder().decode(value);
+
+			if(bytes.length == 0 || (length > 0 && bytes.length != length)) {
+				throw new DecoderException(String.format("property '%s' has unexpected length %d", name, bytes.length));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new DecoderException(String.format("property '%s' is not base64 encoded", name));
+		}
+	}
+
+	private static void checkCipherText(String seed) throws DecoderException {
+		try {
+			int length = Base64.getDecoder().decode(seed).length;
+
+			if(length == 0 || length % AES_BLOCK_SIZE != 0) {
+				throw new DecoderException(String.format("property 'seed' has unexpected length %d for encrypted seed", length));
+			}
+		}
+		catch (IllegalArgumentException e) {
+			throw new DecoderException("property 'seed' is not base64 encoded");
+		}
+	}
+
+	// tokenizer
+
+	private String readName(Set<String> names) throws IOException, DecoderException {
+		String name = readString();
+
+		if(!names.add(name)) {
+			throw error(String.format("duplicate property '%s'", name));
+		}
+
+		expect(':');
+		return name;
+	}
+
+	private String readString() throws IOException, DecoderException {
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+
+		while(true) {
+			int c = next();
+
+			if(c < 0) {
+				throw error("unterminated string");
+			}
+
+			if(c == '"') {
+				return sb.toString();
+			}
+
+			if(c == '\\') {
+				c = next();
+
+				switch(c) {
+				case '"': case '\\': case '/': break;
+				case 'b': c = '\b'; break;
+				case 't': c = '\t'; break;
+				case 'n': c = '\n'; break;
+				case 'f': c = '\f'; break;
+				case 'r': c = '\r'; break;
+				case 'u': c = readHex(); break;
+				default: throw error("illegal escape sequence");
+				}
+			}
+			else if(c < ' ') {
+				throw error("illegal control character in string");
+			}
+
+			if(sb.length() == STRING_LENGTH_MAX) {
+				throw error("string value too long");
+			}
+
+			sb.append((char) c);
+		}
+	}
+
+	private int readHex() throws IOException, DecoderException {
+		int value = 0;
+
+		for(int i = 0; i < 4; i++) {
+			int digit = Character.digit(next(), 16);
+
+			if(digit < 0) {
+				throw error("illegal unicode escape");
+			}
+
+			value = (value << 4) | digit;
+		}
+
+		return value;
+	}
+
+	private int readInt() throws IOException, DecoderException {
+		peekToken();
+		long value = 0;
+		int digits = 0;
+
+		while(peek() >= '0' && peek() <= '9') {
+			value = value * 10 + (next() - '0');
+
+			if(++digits > 9) {
+				throw error("number too large");
+			}
+		}
+
+		if(digits == 0) {
+			throw error("integer expected");
+		}
+
+		return (int) value;
+	}
+
+	// checks the syntax of a value that is not part of the wallet schema
+	private void skipValue(int depth) throws IOException, DecoderException {
+		if(depth > NESTING_DEPTH_MAX) {
+			throw error("nesting too deep");
+		}
+
+		int c = peekToken();
+
+		if(c == '"') {
+			readString();
+		}
+		else if(c == '{') {
+			next();
+			Set<String> names = new HashSet<>();
+
+			if(!consume('}')) {
+				do {
+					readName(names);
+					skipValue(depth + 1);
+				}
+				while(consume(','));
+
+				expect('}');
+			}
+		}
+		else if(c == '[') {
+			next();
+
+			if(!consume(']')) {
+				do {
+					skipValue(depth + 1);
+				}
+				while(consume(','));
+
+				expect(']');
+			}
+		}
+		else if(c == '-' || (c >= '0' && c <= '9')) {
+			while("+-0123456789.eE".indexOf(peek()) >= 0) {
+				next();
+			}
+		}
+		else if(c == 't') {
+			literal("true");
+		}
+		else if(c == 'f') {
+			literal("false");
+		}
+		else if(c == 'n') {
+			literal("null");
+		}
+		else {
+			throw error("value expected");
+		}
+	}
+
+	private void literal(String literal) throws IOException, DecoderException {
+		for(int i = 0; i < literal.length(); i++) {
+			if(next() != literal.charAt(i)) {
+				throw error("illegal literal");
+			}
+		}
+	}
+
+	private void expect(char c) throws IOException, DecoderException {
+		if(peekToken() != c) {
+			throw error(String.format("'%c' expected", c));
+		}
+
+		next();
+	}
+
+	private boolean consume(char c) throws IOException {
+		if(peekToken() == c) {
+			next();
+			return true;
+		}
+
+		return false;
+	}
+
+	// skips whitespace and returns the next character without consuming it
+	private int peekToken() throws IOException {
+		while(peek() == ' ' || peek() == '\t' || peek() == '\n' || peek() == '\r') {
+			next();
+		}
+
+		return peek();
+	}
+
+	private int peek() throws IOException {
+		if(peeked == -2) {
+			peeked = in.read();
+		}
+
+		return peeked;
+	}
+
+	private int next() throws IOException {
+		int c = peek();
+		peeked = -2;
+
+		if(c >= 0) {
+			position++;
+		}
+
+		return c;
+	}
+
+	private DecoderException error(String message) {
+		return new DecoderException(String.format("invalid wallet file at position %d: %s", position, message));
+	}
+}
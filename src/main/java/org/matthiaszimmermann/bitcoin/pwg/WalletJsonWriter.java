@@ -0,0 +1,257 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ *
+ * WalletJsonWriter.java : streaming serializer for wallet files
+ *
+ * Writes the wallet document directly to the output without building an org.json
+ * tree. Properties are written in a fixed order (version, seed, iv, salts, accounts).
+ * The layout matches JSONObject.toString(indentFactor), and characters outside of
+ * printable ASCII are escaped, so the output can also be written to a byte buffer.
+ *
+ */
+public class WalletJsonWriter {
+
+	private final Appendable out;
+	private final int indentFactor;
+
+	/**
+	 * Constructor for a writer.
+	 *
+	 * @param Appendable out target, e.g. a Writer or a StringBuilder
+	 * @param int indentFactor number of spaces per indentation level, 0 writes a single line
+	 *
+	 */
+	public WalletJsonWriter(Appendable out, int indentFactor) {
+		this.out = out;
+		this.indentFactor = indentFactor;
+	}
+
+	/**
+	 * Serialize the wallet to a string.
+	 *
+	 * @param Wallet wallet
+	 * @param EncryptedSeed seed seed properties, null for wallets without seed
+	 * @param int indentFactor number of spaces per indentation level
+	 *
+	 * @return String
+	 *
+	 */
+	public static String toString(Wallet wallet, EncryptedSeed seed, int indentFactor) {
+		StringBuilder sb = new StringBuilder(indentFactor > 0 ? 2048 : 1024);
+
+		try {
+			new WalletJsonWriter(sb, indentFactor).write(wallet, seed);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Serialize the wallet into the provided buffer as ASCII bytes.
+	 *
+	 * @param Wallet wallet
+	 * @param EncryptedSeed seed seed properties, null for wallets without seed
+	 * @param ByteBuffer buffer target, BufferOverflowException if it is too small
+	 * @param int indentFactor number of spaces per indentation level
+	 *
+	 */
+	public static void write(Wallet wallet, EncryptedSeed seed, ByteBuffer buffer, int indentFactor) {
+		try {
+			new WalletJsonWriter(new ByteBufferAppendable(buffer), indentFactor).write(wallet, seed);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Write the wallet document.
+	 *
+	 * @param Wallet wallet
+	 * @param EncryptedSeed seed seed properties, null for wallets without seed
+	 *
+	 */
+	public void write(Wallet wallet, EncryptedSeed seed) throws IOException {
+		int count = 2;
+
+		if(seed != null) {
+			count += seed.isBatch() ? 5 : 2;
+		}
+
+		int last = count - 1;
+		container('{', '}', count, 0, (i, indent) -> {
+			if(i == 0) {
+				key(Wallet.JSON_VERSION);
+				string(seed != null ? seed.getVersion() : Wallet.JSON_VERSION_VALUE);
+			}
+			else if(i == last) {
+				key(Wallet.JSON_ACCOUNTS);
+				container('[', ']', wallet.getAccounts().size(), indent, (j, accountIndent) -> writeAccount(wallet.getAccount(j), accountIndent));
+			}
+			else {
+				writeSeedProperty(seed, i);
+			}
+		});
+	}
+
+	private void writeSeedProperty(EncryptedSeed seed, int property) throws IOException {
+		switch(property) {
+		case 1: key(Wallet.JSON_SEED); string(seed.getSeed()); break;
+		case 2: key(Wallet.JSON_IV); string(seed.getIv()); break;
+		case 3: key(Wallet.JSON_SALT); string(seed.getSalt()); break;
+		case 4: key(Wallet.JSON_KDF_SALT); string(seed.getKdfSalt()); break;
+		case 5: key(Wallet.JSON_KDF_ITERATIONS); out.append(Integer.toString(seed.getKdfIterations())); break;
+		default: throw new IllegalStateException("unexpected wallet property " + property);
+		}
+	}
+
+	private void writeAccount(Account account, int indent) throws IOException {
+		container('{', '}', 1, indent, (i, chainsIndent) -> {
+			key(Wallet.JSON_CHAINS);
+			container('[', ']', 2, chainsIndent, (j, chainIndent) -> writeChain(account.getChain(j), chainIndent));
+		});
+	}
+
+	private void writeChain(Chain chain, int indent) throws IOException {
+		container('{', '}', 2, indent, (i, memberIndent) -> {
+			if(i == 0) {
+				key(Wallet.JSON_PATH);
+				string(chain.getPath());
+			}
+			else {
+				key(Wallet.JSON_ADDRESSES);
+				container('[', ']', 2, memberIndent, (j, addressIndent) -> writeAddress(chain.getAddressAt(j), addressIndent));
+			}
+		});
+	}
+
+	private void writeAddress(Address address, int indent) throws IOException {
+		container('{', '}', 2, indent, (i, memberIndent) -> {
+			if(i == 0) {
+				key(Wallet.JSON_ADDRESS);
+				string(address.getAddressString());
+			}
+			else {
+				key(Wallet.JSON_PATH);
+				string(address.getPath());
+			}
+		});
+	}
+
+	// same layout as org.json: single elements stay on the line of the bracket
+	private void container(char open, char close, int count, int indent, Element element) throws IOException {
+		out.append(open);
+
+		if(count == 1) {
+			element.write(0, indent);
+		}
+		else if(count > 1) {
+			int inner = indent + indentFactor;
+
+			for(int i = 0; i < count; i++) {
+				if(i > 0) {
+					out.append(',');
+				}
+
+				newLine(inner);
+				element.write(i, inner);
+			}
+
+			newLine(indent);
+		}
+
+		out.append(close);
+	}
+
+	private void newLine(int indent) throws IOException {
+		if(indentFactor > 0) {
+			out.append('\n');
+
+			for(int i = 0; i < indent; i++) {
+				out.append(' ');
+			}
+		}
+	}
+
+	private void key(String key) throws IOException {
+		string(key);
+		out.append(':');
+
+		if(indentFactor > 0) {
+			out.append(' ');
+		}
+	}
+
+	private void string(String value) throws IOException {
+		out.append('"');
+
+		char previous = 0;
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+
+			switch(c) {
+			case '"': out.append("\\\""); break;
+			case '\\': out.append("\\\\"); break;
+			case '/': out.append(previous == '<' ? "\\/" : "/"); break;
+			case '\b': out.append("\\b"); break;
+			case '\t': out.append("\\t"); break;
+			case '\n': out.append("\\n"); break;
+			case '\f': out.append("\\f"); break;
+			case '\r': out.append("\\r"); break;
+			default:
+				if(c < ' ' || c > '~') {
+					out.append(String.format("\\u%04x", (int) c));
+				}
+				else {
+					out.append(c);
+				}
+			}
+
+			previous = c;
+		}
+
+		out.append('"');
+	}
+
+	@FunctionalInterface
+	private interface Element {
+		void write(int index, int indent) throws IOException;
+	}
+
+	// the writer only emits ASCII characters
+	private static class ByteBufferAppendable implements Appendable {
+		private final ByteBuffer buffer;
+
+		private ByteBufferAppendable(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public Appendable append(CharSequence csq) {
+			return append(csq, 0, csq.length());
+		}
+
+		@Override
+		public Appendable append(CharSequence csq, int start, int end) {
+			for(int i = start; i < end; i++) {
+				buffer.put((byte) csq.charAt(i));
+			}
+
+			return this;
+		}
+
+		@Override
+		public Appendable append(char c) {
+			buffer.put((byte) c);
+			return this;
+		}
+	}
+}
@@ -47,6 +47,7 @@ public class WalletPageUtility extends HtmlUtility {
 	};
 
 	public static String createHtml(PaperWallet wallet) {
+		WalletSnapshot snapshot = wallet.getSnapshot();
 		StringBuffer html = new StringBuffer();
 		// header
 		HtmlUtility.addOpenElements(html, HtmlUtility.HTML, HtmlUtility.HEAD);
@@ -69,7 +70,7 @@ public class WalletPageUtility extends HtmlUtility {
 		
 		// account address
 		HtmlUtility.addOpenDiv(html, CSS_COLUMN);
-		byte [] addressQrCode = QrCodeUtility.contentToPngBytes(wallet.getAddress(), 256);
+		byte [] addressQrCode = QrCodeUtility.contentToPngBytes(snapshot.getAddress(), 256);
 		HtmlUtility.addEncodedImage(html, addressQrCode, 256, CSS_IMG_ADDRESS);
 		HtmlUtility.addParagraph(html, "QR Code Address", CSS_CAPTION);
 		HtmlUtility.addCloseDiv(html);
@@ -87,7 +88,7 @@ public class WalletPageUtility extends HtmlUtility {
 		HtmlUtility.addOpenDiv(html, CSS_CLEARFIX);
 
 		// qr code for wallet file
-		String walletFileContent = getWalletFileContent(wallet, true);
+		String walletFileContent = getWalletFileContent(snapshot, true);
 		HtmlUtility.addOpenDiv(html, CSS_COLUMN);
 		byte [] walletQrCode = QrCodeUtility.contentToPngBytes(walletFileContent, 400);
 		HtmlUtility.addEncodedImage(html, walletQrCode, 500, CSS_IMG_WALLET);
@@ -97,7 +98,7 @@ public class WalletPageUtility extends HtmlUtility {
 		// address, pass phrase, wallet file, file name
 		HtmlUtility.addOpenDiv(html, CSS_FILL);
 		HtmlUtility.addOpenDiv(html, CSS_CONTENT);
-		HtmlUtility.addContent(html, wallet.getAddress());
+		HtmlUtility.addContent(html, snapshot.getAddress());
 		HtmlUtility.addCloseDiv(html);
 		HtmlUtility.addParagraph(html, "Address", CSS_CAPTION);
 		
@@ -135,20 +136,14 @@ public class WalletPageUtility extends HtmlUtility {
 		return html.toString();
 	}
 
-	private static String getWalletFileContent(PaperWallet wallet, boolean minify) {
-		try {
-			String content = wallet.getFileContent();
-			
-			if(minify) {
-				content = content.replaceAll(",\"", ", \"");
-				content = content.replaceAll("\\s+", " ");
-				
-			}
-			
-			return content;
-		} 
-		catch (Exception e) {
-			throw new RuntimeException("Failed to load content from wallet file", e);
+	private static String getWalletFileContent(WalletSnapshot snapshot, boolean minify) {
+		String content = snapshot.getJson();
+		
+		if(minify) {
+			content = content.replaceAll(",\"", ", \"");
+			content = content.replaceAll("\\s+", " ");
 		}
+		
+		return content;
 	}
 }
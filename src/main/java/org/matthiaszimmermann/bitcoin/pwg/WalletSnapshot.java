@@ -0,0 +1,106 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+/**
+ *
+ * WalletSnapshot.java : serialized state of a paper wallet
+ *
+ * Every serialization of a wallet encrypts its seed with a fresh IV. The snapshot
+ * captures a single serialization, so the wallet file, the HTML page and the QR
+ * codes all show the same content.
+ *
+ */
+public final class WalletSnapshot {
+
+	public static final int JSON_INDENT = 2;
+
+	private final Wallet wallet;
+	private final EncryptedSeed encryptedSeed;
+	private final String json;
+	private final String compactJson;
+	private final String seed;
+	private final String address;
+
+	/**
+	 * Constructor for a snapshot, the seed is encrypted once.
+	 *
+	 * @param Wallet wallet
+	 * @param BatchKey batchKey batch key for version 2.0 wallet files, may be null
+	 *
+	 */
+	public WalletSnapshot(Wallet wallet, BatchKey batchKey) {
+		this(wallet, batchKey, null);
+	}
+
+	/**
+	 * Constructor for a snapshot, the key of a version 1.0 seed is looked up in the provided cache.
+	 *
+	 * @param Wallet wallet
+	 * @param BatchKey batchKey batch key for version 2.0 wallet files, may be null
+	 * @param DerivedKeyCache cache cache owned by the caller, no caching if null
+	 *
+	 */
+	public WalletSnapshot(Wallet wallet, BatchKey batchKey, DerivedKeyCache cache) {
+		this.wallet = wallet;
+		encryptedSeed = wallet.encryptSeed(batchKey, cache);
+
+		json = WalletJsonWriter.toString(wallet, encryptedSeed, JSON_INDENT);
+		compactJson = WalletJsonWriter.toString(wallet, encryptedSeed, 0);
+		seed = encryptedSeed != null ? encryptedSeed.getSeed() : null;
+		address = wallet.getAddress().getAddressString();
+	}
+
+	/**
+	 * Return wallet file content.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getJson() {
+		return json;
+	}
+
+	/**
+	 * Return the content of the snapshot with the provided indentation.
+	 * The seed is not encrypted again, only the layout differs.
+	 *
+	 * @param int indentFactor number of spaces per indentation level, 0 for a single line
+	 *
+	 * @return String
+	 *
+	 */
+	public String getJson(int indentFactor) {
+		if(indentFactor == JSON_INDENT) {
+			return json;
+		}
+		
+		if(indentFactor == 0) {
+			return compactJson;
+		}
+		
+		return WalletJsonWriter.toString(wallet, encryptedSeed, indentFactor);
+	}
+
+	/**
+	 * Return wallet file content on a single line.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getCompactJson() {
+		return compactJson;
+	}
+
+	/**
+	 * Return the (encrypted) seed as stored in the wallet file.
+	 *
+	 * @return String
+	 *
+	 */
+	public String getSeed() {
+		return seed;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+}
@@ -0,0 +1,186 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.apache.commons.codec.DecoderException;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.crypto.MnemonicException;
+import org.bitcoinj.params.MainNetParams;
+
+/**
+ *
+ * WalletVerifier.java : verifies wallet files against a pass phrase
+ *
+ * Each file is first validated by WalletJsonReader, then its seed is decrypted
+ * and the stored addresses are compared with the derived ones. Many files are
+ * verified in parallel on a work stealing pool. Failures are reported as
+ * VerificationResult, nothing is written to the console.
+ *
+ */
+public class WalletVerifier {
+
+	public static final String WALLET_FILE_EXTENSION = ".json";
+
+	private final String passPhrase;
+	private final int parallelism;
+	private final NetworkParameters params;
+
+	/**
+	 * Constructor for a verifier using a single thread.
+	 *
+	 * @param String passPhrase pass phrase of the wallet files
+	 *
+	 */
+	public WalletVerifier(String passPhrase) {
+		this(passPhrase, 1);
+	}
+
+	/**
+	 * Constructor for a verifier.
+	 *
+	 * @param String passPhrase pass phrase of the wallet files
+	 * @param int parallelism number of files verified concurrently
+	 *
+	 */
+	public WalletVerifier(String passPhrase, int parallelism) {
+		this.passPhrase = passPhrase;
+		this.parallelism = Math.max(1, parallelism);
+		this.params = MainNetParams.get();
+	}
+
+	/**
+	 * Return the wallet files of a directory or matching a glob pattern, e.g. /archive/2017/*.json.
+	 * The glob applies to the file names of a single directory. The files are sorted by path.
+	 *
+	 * @param String directoryOrGlob
+	 *
+	 * @return List<File>
+	 *
+	 */
+	public static List<File> listWalletFiles(String directoryOrGlob) throws IOException {
+		File directory = new File(directoryOrGlob);
+		PathMatcher matcher = null;
+
+		if(!directory.isDirectory()) {
+			directory = directory.getAbsoluteFile().getParentFile();
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + new File(directoryOrGlob).getName());
+
+			if(directory == null || !directory.isDirectory()) {
+				throw new IOException("no such directory: " + directoryOrGlob);
+			}
+		}
+
+		File [] files = directory.listFiles();
+
+		if(files == null) {
+			throw new IOException("failed to list directory " + directory.getAbsolutePath());
+		}
+
+		List<File> walletFiles = new ArrayList<>();
+
+		for(File file: files) {
+			if(!file.isFile()) {
+				continue;
+			}
+
+			if(matcher != null ? matcher.matches(Paths.get(file.getName())) : file.getName().endsWith(WALLET_FILE_EXTENSION)) {
+				walletFiles.add(file);
+			}
+		}
+
+		Collections.sort(walletFiles);
+		return walletFiles;
+	}
+
+	/**
+	 * Verify the provided files in parallel. Results are in the order of the files.
+	 * Derived AES keys are cached during the run, the cache is cleared at the end of the run.
+	 *
+	 * @param List<File> files
+	 *
+	 * @return List<VerificationResult>
+	 *
+	 */
+	public List<VerificationResult> verifyAll(List<File> files) throws InterruptedException {
+		DerivedKeyCache cache = new DerivedKeyCache();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			return pool.submit(() -> files.parallelStream()
+					.map(file -> verify(file, cache))
+					.collect(Collectors.toList()))
+					.get();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			pool.shutdown();
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Verify a single wallet file.
+	 *
+	 * @param File file
+	 *
+	 * @return VerificationResult
+	 *
+	 */
+	public VerificationResult verify(File file) {
+		return verify(file, null);
+	}
+
+	private VerificationResult verify(File file, DerivedKeyCache cache) {
+		long start = System.nanoTime();
+		WalletFile walletFile = null;
+
+		try {
+			if(!file.isFile()) {
+				throw new IOException("file does not exist (or path is a directory)");
+			}
+
+			walletFile = WalletJsonReader.read(file, params);
+		}
+		catch (IOException | DecoderException e) {
+			return result(file, VerificationResult.Status.INVALID_FILE, e, null, start);
+		}
+
+		try {
+			Wallet wallet = new Wallet(walletFile, passPhrase, params, cache);
+			return result(file, VerificationResult.Status.OK, null, wallet.getAddress().getAddressString(), start);
+		}
+		catch (GeneralSecurityException | IllegalArgumentException | MnemonicException e) {
+			// a wrong pass phrase fails the padding check or, rarely, yields a malformed seed
+			return result(file, VerificationResult.Status.DECRYPTION_FAILED, e, null, start);
+		}
+		catch (DecoderException e) {
+			return result(file, VerificationResult.Status.ADDRESS_MISMATCH, e, null, start);
+		}
+		catch (Exception e) {
+			return result(file, VerificationResult.Status.ERROR, e, null, start);
+		}
+	}
+
+	private static VerificationResult result(File file, VerificationResult.Status status, Exception e, String address, long start) {
+		String message = null;
+
+		if(e != null) {
+			message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+		}
+
+		return new VerificationResult(file, status, message, address, System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,278 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.crypto.MnemonicException.MnemonicChecksumException;
+import org.bitcoinj.crypto.MnemonicException.MnemonicLengthException;
+import org.bitcoinj.crypto.MnemonicException.MnemonicWordException;
+
+/**
+ *
+ * Wordlist.java : shared, indexed BIP39 wordlist
+ *
+ * Each wordlist is read and checked against its SHA-256 once per process and then
+ * shared by all threads. Words are looked up by a hash map and a trie over the first
+ * letters, BIP39 wordlists are unique within their first four letters.
+ * Mnemonic/entropy conversion matches MnemonicCode.
+ *
+ */
+public final class Wordlist {
+
+	public static final int SIZE = 2048;
+	public static final int PREFIX_LENGTH = 4;
+
+	private static final String RESOURCE_ENGLISH = "mnemonic/wordlist/english.txt";
+	private static final int BITS_PER_WORD = 11;
+
+	// bitcoinj only ships the english wordlist, other locales use it as well
+	private static final Map<String, String []> SOURCES = Collections.singletonMap(
+			Locale.ENGLISH.getLanguage(), new String [] { RESOURCE_ENGLISH, WalletFactory.BIP39_ENGLISH_SHA256 });
+
+	private static final Map<String, Wordlist> registry = new ConcurrentHashMap<>();
+
+	private final List<String> words;
+	private final Map<String, Integer> index;
+	private final Node trie;
+
+	private Wordlist(List<String> words) {
+		this.words = Collections.unmodifiableList(words);
+		this.index = new HashMap<>(2 * SIZE);
+		this.trie = new Node();
+
+		for(int i = 0; i < SIZE; i++) {
+			String word = words.get(i);
+			index.put(word, i);
+			trie.add(word, i);
+		}
+	}
+
+	/**
+	 * Return the wordlist for the provided locale, loaded on first use.
+	 * Locales without a wordlist of their own use the english one.
+	 *
+	 * @param Locale locale
+	 *
+	 * @return Wordlist
+	 *
+	 */
+	public static Wordlist forLocale(Locale locale) {
+		String language = locale != null && SOURCES.containsKey(locale.getLanguage()) ? locale.getLanguage() : Locale.ENGLISH.getLanguage();
+		return registry.computeIfAbsent(language, Wordlist::load);
+	}
+
+	private static Wordlist load(String language) {
+		String [] source = SOURCES.get(language);
+
+		try(InputStream is = MnemonicCode.class.getResourceAsStream(source[0])) {
+			if(is == null) {
+				throw new IOException("missing wordlist resource " + source[0]);
+			}
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			List<String> words = new ArrayList<>(SIZE);
+			String word;
+
+			while((word = reader.readLine()) != null) {
+				md.update(word.getBytes(StandardCharsets.UTF_8));
+				words.add(word);
+			}
+
+			String hash = new String(Hex.encodeHex(md.digest()));
+
+			if(words.size() != SIZE || !hash.equals(source[1])) {
+				throw new IOException(String.format("wordlist for '%s' has unexpected content (%d words, sha256 %s)", language, words.size(), hash));
+			}
+
+			return new Wordlist(words);
+		}
+		catch (IOException | NoSuchAlgorithmException e) {
+			throw new IllegalStateException("failed to load wordlist: " + e.getMessage(), e);
+		}
+	}
+
+	public List<String> getWords() {
+		return words;
+	}
+
+	public String getWord(int i) {
+		return words.get(i);
+	}
+
+	/**
+	 * Return the index of the provided word, or -1 if it is not in the wordlist.
+	 *
+	 * @param String word
+	 *
+	 * @return int
+	 *
+	 */
+	public int indexOf(String word) {
+		Integer i = index.get(word);
+		return i != null ? i : -1;
+	}
+
+	/**
+	 * Return the word matching a word as typed from a paper backup. A complete word
+	 * matches itself and exactly four letters match the word they abbreviate. Anything
+	 * else, e.g. a misspelled or longer word, returns null and is never corrected.
+	 *
+	 * @param String typed
+	 *
+	 * @return String
+	 *
+	 */
+	public String match(String typed) {
+		String word = typed.trim().toLowerCase(Locale.ROOT);
+		Integer i = index.get(word);
+
+		if(i != null) {
+			return words.get(i);
+		}
+
+		if(word.length() != PREFIX_LENGTH) {
+			return null;
+		}
+
+		Node node = trie;
+
+		for(int pos = 0; pos < PREFIX_LENGTH && node != null; pos++) {
+			node = node.children.get(word.charAt(pos));
+		}
+
+		return node != null && node.count == 1 ? words.get(node.word) : null;
+	}
+
+	/**
+	 * Return the mnemonic for the provided entropy, same as MnemonicCode.toMnemonic().
+	 *
+	 * @param byte[] entropy length must be a multiple of 4 bytes
+	 *
+	 * @return List<String>
+	 *
+	 */
+	public List<String> toMnemonic(byte[] entropy) throws MnemonicLengthException {
+		if(entropy.length == 0 || entropy.length % 4 != 0) {
+			throw new MnemonicLengthException("entropy length not a positive multiple of 32 bits");
+		}
+
+		byte[] hash = sha256(entropy);
+		int entropyBits = entropy.length * 8;
+		int count = (entropyBits + entropyBits / 32) / BITS_PER_WORD;
+		List<String> mnemonic = new ArrayList<>(count);
+
+		for(int i = 0; i < count; i++) {
+			int wordIndex = 0;
+
+			for(int bit = i * BITS_PER_WORD; bit < (i + 1) * BITS_PER_WORD; bit++) {
+				boolean set = bit < entropyBits ? isSet(entropy, bit) : isSet(hash, bit - entropyBits);
+				wordIndex = (wordIndex << 1) | (set ? 1 : 0);
+			}
+
+			mnemonic.add(words.get(wordIndex));
+		}
+
+		return mnemonic;
+	}
+
+	/**
+	 * Return the entropy of the provided mnemonic, same as MnemonicCode.toEntropy().
+	 *
+	 * @param List<String> mnemonic
+	 *
+	 * @return byte[]
+	 *
+	 */
+	public byte[] toEntropy(List<String> mnemonic) throws MnemonicLengthException, MnemonicWordException, MnemonicChecksumException {
+		if(mnemonic.isEmpty() || mnemonic.size() % 3 != 0) {
+			throw new MnemonicLengthException("word list size must be a positive multiple of three words");
+		}
+
+		int totalBits = mnemonic.size() * BITS_PER_WORD;
+		int checksumBits = totalBits / 33;
+		int entropyBits = totalBits - checksumBits;
+		byte[] entropy = new byte[entropyBits / 8];
+		int checksum = 0;
+		int bit = 0;
+
+		for(String word: mnemonic) {
+			int wordIndex = indexOf(word);
+
+			if(wordIndex < 0) {
+				throw new MnemonicWordException(word);
+			}
+
+			for(int shift = BITS_PER_WORD - 1; shift >= 0; shift--, bit++) {
+				boolean set = ((wordIndex >>> shift) & 1) != 0;
+
+				if(bit < entropyBits) {
+					if(set) {
+						entropy[bit >>> 3] |= 0x80 >>> (bit & 7);
+					}
+				}
+				else {
+					checksum = (checksum << 1) | (set ? 1 : 0);
+				}
+			}
+		}
+
+		byte[] hash = sha256(entropy);
+
+		for(int i = 0; i < checksumBits; i++) {
+			boolean set = ((checksum >>> (checksumBits - 1 - i)) & 1) != 0;
+
+			if(set != isSet(hash, i)) {
+				throw new MnemonicChecksumException();
+			}
+		}
+
+		return entropy;
+	}
+
+	private static boolean isSet(byte[] data, int bit) {
+		return (data[bit >>> 3] & (0x80 >>> (bit & 7))) != 0;
+	}
+
+	private static byte[] sha256(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Trie node, counts the words below the node and keeps the index of the last one.
+	 */
+	private static final class Node {
+		private final Map<Character, Node> children = new HashMap<>();
+		private int count;
+		private int word;
+
+		void add(String text, int wordIndex) {
+			Node node = this;
+
+			for(int pos = 0; pos < text.length() && pos < PREFIX_LENGTH; pos++) {
+				node = node.children.computeIfAbsent(text.charAt(pos), c -> new Node());
+				node.count++;
+				node.word = wordIndex;
+			}
+		}
+	}
+}
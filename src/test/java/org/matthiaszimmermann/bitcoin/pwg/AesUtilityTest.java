@@ -6,10 +6,15 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.IOException;
+import java.security.spec.KeySpec;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 
 import org.junit.Test;
 
@@ -107,6 +112,72 @@ public class AesUtilityTest extends BaseTest {
 		log("--- end testUtilityConstructor() ---");
 	}
 	
+	@Test
+	public void testKeyMatchesSecretKeyFactory() throws Exception {
+		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+		int [] keyStrengths = { KEY_STRENGTH, KEY_STRENGTH_DIFFERENT, 512 };
+
+		for(int keyStrength: keyStrengths) {
+			KeySpec spec = new PBEKeySpec(PASS_PHRASE.toCharArray(), SALT, ITERATION_COUNT_DIFFERENT, keyStrength);
+			byte [] expected = factory.generateSecret(spec).getEncoded();
+			byte [] actual = AesUtility.deriveKey(PASS_PHRASE, SALT, ITERATION_COUNT_DIFFERENT, keyStrength);
+
+			assertArrayEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void testKeyCache() throws Exception {
+		log("--- start testKeyCache() ---");
+		
+		DerivedKeyCache cache = new DerivedKeyCache();
+		
+		String key1 = getEncodedKey(new AesUtility(PASS_PHRASE, cache));
+		String key2 = getEncodedKey(new AesUtility(PASS_PHRASE, cache));
+		String key3 = getEncodedKey(new AesUtility(PASS_PHRASE_DIFFERENT, cache));
+		
+		log("hits=%d misses=%d", cache.getHits(), cache.getMisses());
+		assertEquals(key1, key2);
+		assertNotEquals(key1, key3);
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+		// instances without a cache do not touch it
+		assertEquals(key1, getEncodedKey(new AesUtility(PASS_PHRASE)));
+		assertEquals(1, cache.getHits());
+		
+		log("--- end testKeyCache() ---");
+	}
+	
+	@Test
+	public void testKeyCacheEviction() throws Exception {
+		AtomicLong now = new AtomicLong(0);
+		DerivedKeyCache cache = new DerivedKeyCache(1, 1000, now::get);
+		byte [] key = { 1, 2, 3, 4 };
+		
+		cache.put(PASS_PHRASE, SALT, ITERATION_COUNT, KEY_STRENGTH, key);
+		assertArrayEquals(key, cache.get(PASS_PHRASE, SALT, ITERATION_COUNT, KEY_STRENGTH));
+		assertNull(cache.get(PASS_PHRASE, SALT_DIFFERENT, ITERATION_COUNT, KEY_STRENGTH));
+		assertNull(cache.get(PASS_PHRASE, SALT, ITERATION_COUNT_DIFFERENT, KEY_STRENGTH));
+		
+		// size limit
+		cache.put(PASS_PHRASE_DIFFERENT, SALT, ITERATION_COUNT, KEY_STRENGTH, key);
+		assertEquals(1, cache.getSize());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get(PASS_PHRASE, SALT, ITERATION_COUNT, KEY_STRENGTH));
+		
+		// time to live
+		now.set(1000);
+		assertNull(cache.get(PASS_PHRASE_DIFFERENT, SALT, ITERATION_COUNT, KEY_STRENGTH));
+		assertEquals(0, cache.getSize());
+		assertEquals(2, cache.getEvictions());
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		
+		// the cache works on copies
+		assertArrayEquals(new byte [] { 1, 2, 3, 4 }, key);
+	}
+	
 	private String getEncodedKey(AesUtility utility) {
 		return AesUtility.bytesToBase64(utility.getSecretKey().getEncoded());
 	}
@@ -2,6 +2,7 @@ package org.matthiaszimmermann.bitcoin.pwg;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -94,6 +95,235 @@ public class ApplicationTest extends BaseTest {
 		}
 	}
 
+	@Test
+	public void createWalletBatchHappyCase() {
+		if(setupFailed) {
+			return;
+		}
+
+		String passPhrase = "test pass phrase";
+		String [] args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, passPhrase, Application.SWITCH_COUNT, "4", Application.SWITCH_THREADS, "2"};
+		Application app = new Application();
+		String message = app.run(args);
+		List<File> files = app.getWalletFiles();
+
+		Assert.assertTrue(String.format("failed to write paper wallet batch to directory %s: expected message '%s ...', actual message: '%s'", tmpFilePath, Application.CREATE_OK, message), message.startsWith(Application.CREATE_OK));
+		Assert.assertEquals("unexpected number of wallet files", 4, files.size());
+
+		for(File jsonFile: files) {
+			File htmlFile = deriveFile(jsonFile, Application.EXT_HTML);
+			File pngFile = deriveFile(jsonFile, Application.EXT_PNG);
+
+			tmpFile.add(jsonFile);
+			tmpFile.add(htmlFile);
+			tmpFile.add(pngFile);
+
+			Assert.assertTrue("failed to create json file " + jsonFile.getAbsolutePath(), jsonFile.exists());
+			Assert.assertTrue("failed to create html file " + htmlFile.getAbsolutePath(), htmlFile.exists());
+			Assert.assertTrue("failed to create png file " + pngFile.getAbsolutePath(), pngFile.exists());
+			Assert.assertEquals(PaperWallet.WALLET_OK, PaperWallet.checkWalletFileStatus(jsonFile, passPhrase));
+		}
+
+		// no silent default for a thread count that is not positive
+		args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, passPhrase, Application.SWITCH_COUNT, "4", Application.SWITCH_THREADS, "0"};
+		message = new Application().run(args);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+		Assert.assertTrue(message, message.contains(Application.SWITCH_THREADS));
+	}
+
+	@Test
+	public void verifyWalletDirectory() throws IOException {
+		if(setupFailed) {
+			return;
+		}
+
+		String passPhrase = "test pass phrase";
+		File directory = new File(tmpFilePath, UUID.randomUUID().toString());
+		directory.mkdir();
+
+		String [] createArgs = new String [] { Application.SWITCH_DIRECTORY, directory.getAbsolutePath(), Application.SWITCH_PASS_PHRASE, passPhrase, Application.SWITCH_COUNT, "3", Application.SWITCH_THREADS, "2", "-s"};
+		Application creator = new Application();
+		String message = creator.run(createArgs);
+		Assert.assertTrue("failed to create wallet batch: " + message, message.startsWith(Application.CREATE_OK));
+
+		for(File jsonFile: creator.getWalletFiles()) {
+			tmpFile.add(jsonFile);
+			tmpFile.add(deriveFile(jsonFile, Application.EXT_HTML));
+			tmpFile.add(deriveFile(jsonFile, Application.EXT_PNG));
+		}
+
+		File corruptFile = new File(directory, "corrupt.json");
+		File reportFile = new File(directory, "report.txt");
+		FileUtility.saveToFile(WALLET_JSON_CORRUPT_1, corruptFile.getAbsolutePath());
+		tmpFile.add(corruptFile);
+		tmpFile.add(reportFile);
+		tmpFile.add(directory);
+
+		// all json files of the directory, one of them corrupt
+		String [] args = new String [] { Application.SWITCH_PASS_PHRASE, passPhrase, Application.SWITCH_VERIFY_DIRECTORY, directory.getAbsolutePath(), Application.SWITCH_REPORT, reportFile.getAbsolutePath()};
+		Application app = new Application();
+		message = app.run(args);
+		List<VerificationResult> results = app.getVerificationResults();
+
+		Assert.assertEquals(String.format("%s 1 of 4 wallet files failed", Application.VERIFY_ERROR), message);
+		Assert.assertEquals(4, results.size());
+		Assert.assertEquals(3, results.stream().filter(VerificationResult::isOk).count());
+		Assert.assertEquals(VerificationResult.Status.INVALID_FILE, results.stream().filter(result -> result.getFile().equals(corruptFile)).findFirst().get().getStatus());
+		Assert.assertEquals(4, Files.readAllLines(reportFile.toPath()).size());
+
+		// glob pattern matching the wallet files only, wrong pass phrase
+		args = new String [] { Application.SWITCH_PASS_PHRASE, "wrong pass phrase", Application.SWITCH_VERIFY_DIRECTORY, directory.getAbsolutePath() + File.separator + "1*.json", "-s"};
+		app = new Application();
+		message = app.run(args);
+
+		Assert.assertEquals(String.format("%s 3 of 3 wallet files failed", Application.VERIFY_ERROR), message);
+		Assert.assertTrue(app.getVerificationResults().stream().allMatch(result -> result.getStatus() == VerificationResult.Status.DECRYPTION_FAILED));
+
+		// pass phrase file, only the first line without its line end is the pass phrase
+		File passPhraseFile = new File(directory, "pass.txt");
+		FileUtility.saveToFile(passPhrase + "\r\nsecond line\n", passPhraseFile.getAbsolutePath());
+		tmpFile.add(passPhraseFile);
+
+		args = new String [] { Application.SWITCH_PASS_PHRASE_FILE, passPhraseFile.getAbsolutePath(), Application.SWITCH_VERIFY_DIRECTORY, directory.getAbsolutePath() + File.separator + "1*.json", "-s"};
+		message = new Application().run(args);
+		Assert.assertEquals(String.format("%s 3 wallet files", Application.VERIFY_OK), message);
+	}
+
+	@Test
+	public void validateAddresses() throws IOException {
+		if(setupFailed) {
+			return;
+		}
+
+		File directory = new File(tmpFilePath, UUID.randomUUID().toString());
+		File walletFile = new File(directory, "wallet.json");
+		File addressFile = new File(directory, "addresses.txt");
+		File reportFile = new File(directory, "report.txt");
+		directory.mkdir();
+		FileUtility.saveToFile(WALLET_JSON_OK, walletFile.getAbsolutePath());
+		tmpFile.add(walletFile);
+		tmpFile.add(addressFile);
+		tmpFile.add(reportFile);
+		tmpFile.add(directory);
+
+		List<String> lines = new ArrayList<>();
+		lines.add("1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5Te");
+		lines.add("");
+		lines.add("18gXGiQ2dfCVTFioJp35bTANjzmVczyyHA");
+		lines.add("1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5Tf");
+		lines.add("mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn");
+		lines.add("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2");
+		Files.write(addressFile.toPath(), lines);
+
+		// well formed main net addresses only
+		String [] args = new String [] { Application.SWITCH_VALIDATE_ADDRESSES, addressFile.getAbsolutePath(), Application.SWITCH_THREADS, "2", "-s"};
+		Application app = new Application();
+		String message = app.run(args);
+		AddressValidator.Report report = app.getAddressReport();
+
+		Assert.assertEquals(String.format("%s 2 of 5 addresses failed", Application.VALIDATE_ERROR), message);
+		Assert.assertEquals(3, report.getCount(AddressValidator.Status.OK));
+		Assert.assertEquals(1, report.getCount(AddressValidator.Status.INVALID_CHECKSUM));
+		Assert.assertEquals(1, report.getCount(AddressValidator.Status.WRONG_NETWORK));
+		Assert.assertEquals(4, report.getFailures().get(0).getLine());
+		Assert.assertEquals(5, report.getFailures().get(1).getLine());
+
+		// addresses must also belong to the wallet file
+		args = new String [] { Application.SWITCH_VALIDATE_ADDRESSES, addressFile.getAbsolutePath(), Application.SWITCH_INVENTORY, directory.getAbsolutePath(), Application.SWITCH_REPORT, reportFile.getAbsolutePath()};
+		app = new Application();
+		message = app.run(args);
+		report = app.getAddressReport();
+
+		Assert.assertEquals(String.format("%s 3 of 5 addresses failed", Application.VALIDATE_ERROR), message);
+		Assert.assertEquals(2, report.getCount(AddressValidator.Status.OK));
+		Assert.assertEquals(AddressValidator.Status.NOT_IN_INVENTORY, report.getFailures().get(2).getStatus());
+		Assert.assertEquals(3, Files.readAllLines(reportFile.toPath()).size());
+	}
+
+	@Test
+	public void createVanityWallet() {
+		if(setupFailed) {
+			return;
+		}
+
+		String [] args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, "vanity", Application.SWITCH_VANITY_PREFIX, "1B", Application.SWITCH_THREADS, "2", "-s"};
+		Application app = new Application();
+		String message = app.run(args);
+		Assert.assertTrue("failed to create vanity wallet: " + message, message.startsWith(Application.CREATE_OK));
+
+		File jsonFile = new File(message.substring(Application.CREATE_OK.length() + 1));
+		tmpFile.add(jsonFile);
+		tmpFile.add(deriveFile(jsonFile, Application.EXT_HTML));
+		tmpFile.add(deriveFile(jsonFile, Application.EXT_PNG));
+
+		Assert.assertTrue(app.getWallet().getAddress().getAddressString().startsWith("1B"));
+		Assert.assertTrue(jsonFile.getName().startsWith("1B"));
+
+		// search limit reached without a match
+		args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, "vanity", Application.SWITCH_VANITY_PREFIX, "1111", Application.SWITCH_VANITY_MAX, "2", "-s"};
+		message = new Application().run(args);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+
+		// vanity prefix is rejected in batch mode and for bip85 wallets
+		args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, "vanity", Application.SWITCH_VANITY_PREFIX, "1B", Application.SWITCH_COUNT, "2", "-s"};
+		message = new Application().run(args);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+		Assert.assertTrue(message, message.contains(Application.SWITCH_COUNT));
+
+		args = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, "vanity", Application.SWITCH_VANITY_PREFIX, "1B", Application.SWITCH_BIP85_MASTER, tmpFilePath, "-s"};
+		message = new Application().run(args);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+		Assert.assertTrue(message, message.contains(Application.SWITCH_BIP85_MASTER));
+	}
+
+	@Test
+	public void createBip85WalletsReproducible() {
+		if(setupFailed) {
+			return;
+		}
+
+		File directory = new File(tmpFilePath, UUID.randomUUID().toString());
+		File masterFile = new File(tmpFilePath, UUID.randomUUID().toString() + ".txt");
+		directory.mkdir();
+		FileUtility.saveToFile(Bip85Test.MASTER_XPRV, masterFile.getAbsolutePath());
+
+		String [] batchArgs = new String [] { Application.SWITCH_DIRECTORY, directory.getAbsolutePath(), Application.SWITCH_PASS_PHRASE, "bip85", Application.SWITCH_BIP85_MASTER, masterFile.getAbsolutePath(), Application.SWITCH_BIP85_INDEX, "5", Application.SWITCH_COUNT, "3", "-s"};
+		Application batch = new Application();
+		String message = batch.run(batchArgs);
+		Assert.assertTrue("failed to create bip85 batch: " + message, message.startsWith(Application.CREATE_OK));
+
+		for(File jsonFile: batch.getWalletFiles()) {
+			tmpFile.add(jsonFile);
+			tmpFile.add(deriveFile(jsonFile, Application.EXT_HTML));
+			tmpFile.add(deriveFile(jsonFile, Application.EXT_PNG));
+		}
+
+		// single wallet for child index 6 is the second wallet of the batch
+		String [] singleArgs = new String [] { Application.SWITCH_DIRECTORY, tmpFilePath, Application.SWITCH_PASS_PHRASE, "bip85", Application.SWITCH_BIP85_MASTER, masterFile.getAbsolutePath(), Application.SWITCH_BIP85_INDEX, "6", "-s"};
+		Application single = new Application();
+		message = single.run(singleArgs);
+		Assert.assertTrue("failed to create bip85 wallet: " + message, message.startsWith(Application.CREATE_OK));
+
+		File jsonFile = new File(message.substring(Application.CREATE_OK.length() + 1));
+		tmpFile.add(jsonFile);
+		tmpFile.add(deriveFile(jsonFile, Application.EXT_HTML));
+		tmpFile.add(deriveFile(jsonFile, Application.EXT_PNG));
+		tmpFile.add(masterFile);
+		tmpFile.add(directory);
+
+		Assert.assertEquals(3, batch.getWalletFiles().size());
+		Assert.assertTrue(batch.getWalletFiles().stream().anyMatch(file -> file.getName().equals(jsonFile.getName())));
+
+		// child indexes beyond the int range are rejected before the batch starts
+		String [] overflowArgs = new String [] { Application.SWITCH_DIRECTORY, directory.getAbsolutePath(), Application.SWITCH_PASS_PHRASE, "bip85", Application.SWITCH_BIP85_MASTER, masterFile.getAbsolutePath(), Application.SWITCH_BIP85_INDEX, Integer.toString(Integer.MAX_VALUE - 1), Application.SWITCH_COUNT, "3", "-s"};
+		message = new Application().run(overflowArgs);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+
+		String [] negativeArgs = new String [] { Application.SWITCH_DIRECTORY, directory.getAbsolutePath(), Application.SWITCH_PASS_PHRASE, "bip85", Application.SWITCH_BIP85_MASTER, masterFile.getAbsolutePath(), Application.SWITCH_BIP85_INDEX, "-1", Application.SWITCH_COUNT, "2", "-s"};
+		message = new Application().run(negativeArgs);
+		Assert.assertTrue(message, message.startsWith(Application.CRATE_ERROR));
+	}
+
 	private String bytesToString(byte[] seed) {
 		StringBuffer sb = new StringBuffer("[");
 		
@@ -0,0 +1,63 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+public class Base58CheckTest extends BaseTest {
+
+	// bip32 test vector 1, master key
+	private static final String XPUB = "xpub661MyMwAqRbcFtXgS5sYJABqqG9YLmC4Q1Rdap9gSE8NqtwybGhePY2gZ29ESFjqJoCu1Rupje8YtGqsefD265TMg7usUDFdp6W1EGMcet8";
+
+	@Test
+	public void testMatchesBitcoinj() {
+		Random random = new Random(7);
+		char [] chars = new char[Base58Check.MAX_ENCODED_LENGTH];
+		byte [] decoded = new byte[Base58Check.EXTENDED_KEY_LENGTH];
+
+		for(int length: new int [] { Base58Check.ADDRESS_LENGTH - Base58Check.CHECKSUM_LENGTH, Base58Check.EXTENDED_KEY_LENGTH - Base58Check.CHECKSUM_LENGTH }) {
+			for(int i = 0; i < 200; i++) {
+				byte [] payload = new byte[length];
+				random.nextBytes(payload);
+
+				// leading zero bytes map to leading '1' characters
+				Arrays.fill(payload, 0, i % 4, (byte) 0);
+
+				byte [] bytes = Arrays.copyOf(payload, length + Base58Check.CHECKSUM_LENGTH);
+				System.arraycopy(Sha256Hash.hashTwice(payload), 0, bytes, length, Base58Check.CHECKSUM_LENGTH);
+				String expected = Base58.encode(bytes);
+
+				assertEquals(expected, Base58Check.encodeChecked(payload));
+				assertEquals(expected, new String(chars, 0, Base58Check.encode(bytes, bytes.length, chars)));
+				assertEquals(Base58Check.OK, Base58Check.decode(expected, decoded, bytes.length));
+				assertArrayEquals(bytes, Arrays.copyOf(decoded, bytes.length));
+				assertArrayEquals(payload, Base58Check.decodeChecked(expected, bytes.length));
+			}
+		}
+
+		log("xpub round trip: %s", XPUB);
+		byte [] xpub = Base58Check.decodeChecked(XPUB, Base58Check.EXTENDED_KEY_LENGTH);
+		assertEquals(XPUB, Base58Check.encodeChecked(xpub));
+	}
+
+	@Test
+	public void testInvalid() {
+		byte [] out = new byte[Base58Check.ADDRESS_LENGTH];
+		String address = "1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5Te";
+
+		assertEquals(Base58Check.OK, Base58Check.decode(address, out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_CHECKSUM, Base58Check.decode("1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5Tf", out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_CHARACTER, Base58Check.decode("1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5T0", out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_CHARACTER, Base58Check.decode("1FteBgh6KQ3Bnv4SSx8r2oLE198uExs5Té", out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_LENGTH, Base58Check.decode("", out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_LENGTH, Base58Check.decode(address + "zzz", out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_LENGTH, Base58Check.decode("1" + address, out, Base58Check.ADDRESS_LENGTH));
+		assertEquals(Base58Check.INVALID_LENGTH, Base58Check.decode(XPUB, out, Base58Check.ADDRESS_LENGTH));
+	}
+}
@@ -0,0 +1,76 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * Base class for the micro benchmarks. Benchmarks are plain main classes
+ * and are not picked up by the test runner. Run them after 'mvn test-compile' with 
+ * target/classes, target/test-classes and the project dependencies on the class path.
+ */
+public class BaseBenchmark {
+
+	public static final int WARMUP_ROUNDS = 3;
+
+	/**
+	 * Run the provided operation for the indices 0 .. count-1 after some warm up rounds 
+	 * and log the throughput of the measured round.
+	 *
+	 * @return double operations per second
+	 */
+	protected static double measure(String name, int count, IntConsumer operation) {
+		for(int round = 0; round < WARMUP_ROUNDS; round++) {
+			for(int i = 0; i < count; i++) {
+				operation.accept(i);
+			}
+		}
+
+		long start = System.nanoTime();
+
+		for(int i = 0; i < count; i++) {
+			operation.accept(i);
+		}
+
+		long nanos = System.nanoTime() - start;
+		double opsPerSecond = count * 1e9 / nanos;
+
+		log(String.format("%-40s %10d ops %10.1f ms %12.1f ops/s", name, count, nanos / 1e6, opsPerSecond));
+
+		return opsPerSecond;
+	}
+
+	/**
+	 * Run the provided operation for the indices 0 .. count-1 after a warm up round 
+	 * and log the heap allocated by the current thread per operation.
+	 *
+	 * @return double allocated bytes per operation, -1 if the JVM does not count allocations
+	 */
+	protected static double measureAllocation(String name, int count, IntConsumer operation) {
+		if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		for(int i = 0; i < count; i++) {
+			operation.accept(i);
+		}
+
+		long start = threads.getThreadAllocatedBytes(thread);
+
+		for(int i = 0; i < count; i++) {
+			operation.accept(i);
+		}
+
+		double bytesPerOp = (double) (threads.getThreadAllocatedBytes(thread) - start) / count;
+
+		log(String.format("%-40s %10d ops %12.0f bytes/op", name, count, bytesPerOp));
+
+		return bytesPerOp;
+	}
+
+	protected static void log(String message) {
+		System.out.println(message);
+	}
+}
@@ -0,0 +1,73 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class BatchPipelineTest extends BaseTest {
+
+	@Test(timeout = 60000)
+	public void testFailingSeedSource() throws Exception {
+		File directory = Files.createTempDirectory("batch").toFile();
+
+		BatchPipeline pipeline = new BatchPipeline("", directory.getAbsolutePath(), 2, i -> {
+			if(i == 1) {
+				throw new ArithmeticException("integer overflow");
+			}
+
+			byte [] seed = new byte[BatchPipeline.SEED_LENGTH];
+			seed[0] = (byte) i;
+			return seed;
+		});
+
+		BatchPipeline.Result result = pipeline.run(3);
+		log("errors: %s", result.getErrors());
+
+		assertEquals(2, result.getFiles().size());
+		assertEquals(1, result.getErrors().size());
+		assertTrue(result.getErrors().get(0).startsWith("wallet 1: integer overflow"));
+
+		for(File file: directory.listFiles()) {
+			file.delete();
+		}
+
+		directory.delete();
+	}
+
+	@Test(timeout = 60000)
+	public void testErrorAbortsRun() throws Exception {
+		File directory = Files.createTempDirectory("batch").toFile();
+
+		BatchPipeline pipeline = new BatchPipeline("", directory.getAbsolutePath(), 2, i -> {
+			if(i == 1) {
+				throw new OutOfMemoryError("seed buffer");
+			}
+
+			return new byte[BatchPipeline.SEED_LENGTH];
+		});
+
+		try {
+			pipeline.run(3);
+			fail("error of the vm reported as wallet failure");
+		}
+		catch (OutOfMemoryError e) {
+			log("aborted: %s", e.getMessage());
+		}
+
+		for(File file: directory.listFiles()) {
+			file.delete();
+		}
+
+		directory.delete();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoThreads() {
+		new BatchPipeline("", ".", 0);
+	}
+}
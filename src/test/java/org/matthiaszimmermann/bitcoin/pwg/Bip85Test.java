@@ -0,0 +1,59 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.HDUtils;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+
+public class Bip85Test extends BaseTest {
+
+	// https://github.com/bitcoin/bips/blob/master/bip-0085.mediawiki#bip39
+	public static final String MASTER_XPRV = "xprv9s21ZrQH143K2LBWUUQRFXhucrQqBpKdRRxNVq2zBqsx8HVqFk2uYo8kmbaLLHRdqtQpUm98uKfu3vca1LqdGhUtyoFnCNkfmXRyPXLjbKb";
+	public static final String CHILD_12_ENTROPY = "6250b68daf746d12a24d58b4787a714b";
+	public static final String CHILD_12_MNEMONIC = "girl mad pet galaxy egg matter matrix prison refuse sense ordinary nose";
+	public static final String CHILD_18_MNEMONIC = "near account window bike charge season chef number sketch tomorrow excuse sniff circle vital hockey outdoor supply token";
+	public static final String CHILD_24_MNEMONIC = "puppy ocean match cereal symbol another shed magic wrap hammer bulb intact gadget divorce twin tonight reason outdoor destroy simple truth cigar social volcano";
+
+	@Test
+	public void testVectors() throws Exception {
+		Bip85 bip85 = Bip85.fromString(MASTER_XPRV, MainNetParams.get());
+
+		assertEquals(CHILD_12_ENTROPY, new String(Hex.encodeHex(bip85.deriveEntropy(12, 0))));
+		assertEquals(CHILD_12_MNEMONIC, String.join(" ", bip85.deriveMnemonic(12, 0)));
+		assertEquals(CHILD_18_MNEMONIC, String.join(" ", bip85.deriveMnemonic(18, 0)));
+		assertEquals(CHILD_24_MNEMONIC, String.join(" ", bip85.deriveMnemonic(24, 0)));
+	}
+
+	@Test
+	public void testChildrenMatchBip32() throws Exception {
+		DeterministicKey master = DeterministicKey.deserializeB58(MASTER_XPRV, MainNetParams.get());
+		Bip85 bip85 = new Bip85(master);
+		IntFunction<byte[]> seeds = bip85.seedSource(12, 100);
+
+		for(int index: new int [] { 0, 1, 100, 101, 0x7fffffff }) {
+			DeterministicKey key = master;
+
+			for(int child: new int [] { Bip85.PURPOSE, Bip85.APPLICATION_BIP39, Bip85.LANGUAGE_ENGLISH, 12, index }) {
+				key = HDKeyDerivation.deriveChildKey(key, new ChildNumber(child, true));
+			}
+
+			byte [] expected = Arrays.copyOf(HDUtils.hmacSha512("bip-entropy-from-k".getBytes(), key.getPrivKeyBytes()), 16);
+			assertArrayEquals(expected, bip85.deriveEntropy(12, index));
+		}
+
+		// child wallets of a range are reproducible from their index
+		assertArrayEquals(bip85.deriveEntropy(12, 101), seeds.apply(1));
+
+		Wallet child = WalletFactory.getInstance().newWallet(seeds.apply(0), "");
+		log("child wallet 100: %s %s", child.getAddress().getAddressString(), child.getMnemonic());
+	}
+}
@@ -0,0 +1,118 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.params.MainNetParams;
+import org.spongycastle.math.ec.ECPoint;
+
+/**
+ * Compares address derivation variants on a fixed chain key.
+ * Optional argument: number of derived addresses per variant.
+ */
+public class DerivationBenchmark extends BaseBenchmark {
+
+	public static void main(String [] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		NetworkParameters params = MainNetParams.get();
+		byte [] seed = MnemonicCode.toSeed(new MnemonicCode().toMnemonic(WalletTest.WALLET_SEED_BYTES), "");
+		DeterministicKey cKey = HDKeyDerivation.deriveChildKey(HDKeyDerivation.createMasterPrivateKey(seed), 0);
+
+		double fromPrivate = measure("child key + ECKey.fromPrivate", count, i -> {
+			DeterministicKey dk = HDKeyDerivation.deriveChildKey(cKey, new ChildNumber(i, false));
+			ECKey.fromPrivate(new BigInteger(1, dk.getPrivKeyBytes()), true).getPubKeyHash();
+		});
+
+		double precalculated = measure("child key + precalculated public", count, i -> {
+			DeterministicKey dk = HDKeyDerivation.deriveChildKey(cKey, new ChildNumber(i, false));
+			ECKey.fromPrivateAndPrecalculatedPublic(dk.getPrivKey(), dk.getPubKeyPoint()).getPubKeyHash();
+		});
+
+		DerivationEngine engine = new DerivationEngine(cKey);
+		DeterministicKey xpub = cKey.dropPrivateBytes().dropParent();
+		DerivationEngine xpubEngine = new DerivationEngine(xpub);
+
+		double hdKeyDerivation = measure("HDKeyDerivation hardened", count, i -> HDKeyDerivation.deriveChildKey(cKey, new ChildNumber(i, true)));
+		double derivationEngine = measure("DerivationEngine hardened", count, i -> engine.deriveChild(i, true));
+		measure("HDKeyDerivation public", count, i -> HDKeyDerivation.deriveChildKey(xpub, new ChildNumber(i, false)));
+		measure("DerivationEngine public", count, i -> xpubEngine.deriveChild(i, false));
+
+		double single = measure("Address.getPubKeyHash", count, i -> new Address(params, engine, i).getPubKeyHash());
+		double batch = measure("DerivationEngine.deriveKeys (batches of " + AddressSpliterator.BATCH_SIZE + ")", Math.max(1, count / AddressSpliterator.BATCH_SIZE), i -> {
+			for(ECKey key: engine.deriveKeys(i * AddressSpliterator.BATCH_SIZE, AddressSpliterator.BATCH_SIZE)) {
+				key.getPubKeyHash();
+			}
+		}) * AddressSpliterator.BATCH_SIZE;
+
+		byte [][] pubKeys = new byte[count][];
+		for(int i = 0; i < count; i++) {
+			pubKeys[i] = new Address(params, engine, i).getPubKey();
+		}
+
+		double bitcoinjHash = measure("bitcoinj hash160 + address", count, i -> new org.bitcoinj.core.Address(params, Utils.sha256hash160(pubKeys[i])).toString());
+		double threadHash = measure("Hash160 hash160 + address", count, i -> Hash160.toAddress(params.getAddressHeader(), Hash160.hash160(pubKeys[i])));
+
+		BigInteger n = ECKey.CURVE.getN();
+		BigInteger [] scalars = new BigInteger[count];
+		for(int i = 0; i < count; i++) {
+			scalars[i] = new BigInteger(1, HDKeyDerivation.deriveChildKey(cKey, new ChildNumber(i, true)).getPrivKeyBytes()).mod(n);
+		}
+
+		double publicPoint = measure("ECKey.publicPointFromPrivate", count, i -> ECKey.publicPointFromPrivate(scalars[i]).normalize());
+		double fixedBase = 0;
+		ECPoint addend = cKey.getPubKeyPoint();
+		for(int window: new int [] { 3, 4, 5, 6, 8 }) {
+			FixedBaseMultiplier multiplier = new FixedBaseMultiplier(window);
+			double secret = measure("FixedBaseMultiplier window " + window, count, i -> multiplier.multiply(scalars[i]));
+			measure("FixedBaseMultiplier window " + window + " + point", count, i -> multiplier.multiply(scalars[i], addend));
+			fixedBase = window == FixedBaseMultiplier.WINDOW_DEFAULT ? secret : fixedBase;
+		}
+
+		double publicPointBytes = measureAllocation("ECKey.publicPointFromPrivate", count, i -> ECKey.publicPointFromPrivate(scalars[i]).normalize());
+		double fixedBaseBytes = measureAllocation("FixedBaseMultiplier", count, i -> FixedBaseMultiplier.getInstance().multiply(scalars[i]));
+
+		List<String> words = new MnemonicCode().toMnemonic(WalletTest.WALLET_SEED_BYTES);
+		int seeds = Math.max(1, count / 20);
+		double mnemonicCode = measure("MnemonicCode.toSeed", seeds, i -> MnemonicCode.toSeed(words, ""));
+		double pbkdf2 = measure("Pbkdf2.bip39Seed", seeds, i -> Pbkdf2.bip39Seed(words, ""));
+
+		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
+		byte [] salt = "ldsqDQvEWJyWZMCl".getBytes();
+		int kdfs = Math.max(1, count / 200);
+		double jca = measure("PBKDF2WithHmacSHA1 (JCA)", kdfs, i -> {
+			try {
+				factory.generateSecret(new PBEKeySpec("pass phrase".toCharArray(), salt, 65536, 256)).getEncoded();
+			} 
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		double parallelBlocks = measure("AesUtility.deriveKey", kdfs, i -> {
+			try {
+				AesUtility.deriveKey("pass phrase", salt, 65536, 256);
+			} 
+			catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+
+		log(String.format("speedup precalculated public key: %.2f", precalculated / fromPrivate));
+		log(String.format("speedup bip39 seed: %.2f", pbkdf2 / mnemonicCode));
+		log(String.format("speedup aes key derivation: %.2f", parallelBlocks / jca));
+		log(String.format("speedup precomputed hmac: %.2f", derivationEngine / hdKeyDerivation));
+		log(String.format("speedup fixed base table (window %d): %.2f", FixedBaseMultiplier.WINDOW_DEFAULT, fixedBase / publicPoint));
+		log(String.format("allocation per k*G: %.0f bytes instead of %.0f", fixedBaseBytes, publicPointBytes));
+		log(String.format("speedup batch normalization: %.2f", batch / single));
+		log(String.format("speedup per thread hash160: %.2f", threadHash / bitcoinjHash));
+	}
+}
@@ -0,0 +1,225 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.crypto.ChildNumber;
+import org.bitcoinj.crypto.DeterministicKey;
+import org.bitcoinj.crypto.HDKeyDerivation;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+import org.spongycastle.crypto.macs.HMac;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.digests.SHA512Digest;
+import org.spongycastle.math.ec.ECPoint;
+
+public class DerivationEngineTest extends BaseTest {
+
+	private static final int CHILDREN = 50;
+
+	// m/0H, m/0H/1, m/0H/1/2H, m/0H/1/2H/2, m/0H/1/2H/2/1000000000
+	private static final String [] BIP32_VECTOR_1_XPRV = {
+		"xprv9uHRZZhk6KAJC1avXpDAp4MDc3sQKNxDiPvvkX8Br5ngLNv1TxvUxt4cV1rGL5hj6KCesnDYUhd7oWgT11eZG7XnxHrnYeSvkzY7d2bhkJ7",
+		"xprv9wTYmMFdV23N2TdNG573QoEsfRrWKQgWeibmLntzniatZvR9BmLnvSxqu53Kw1UmYPxLgboyZQaXwTCg8MSY3H2EU4pWcQDnRnrVA1xe8fs",
+		"xprv9z4pot5VBttmtdRTWfWQmoH1taj2axGVzFqSb8C9xaxKymcFzXBDptWmT7FwuEzG3ryjH4ktypQSAewRiNMjANTtpgP4mLTj34bhnZX7UiM",
+		"xprvA2JDeKCSNNZky6uBCviVfJSKyQ1mDYahRjijr5idH2WwLsEd4Hsb2Tyh8RfQMuPh7f7RtyzTtdrbdqqsunu5Mm3wDvUAKRHSC34sJ7in334",
+		"xprvA41z7zogVVwxVSgdKUHDy1SKmdb533PjDz7J6N6mV6uS3ze1ai8FHa8kmHScGpWmj4WggLyQjgPie1rFSruoUihUZREPSL39UNdE3BBDu76"
+	};
+
+	private static final String [] BIP32_VECTOR_1_XPUB = {
+		"xpub68Gmy5EdvgibQVfPdqkBBCHxA5htiqg55crXYuXoQRKfDBFA1WEjWgP6LHhwBZeNK1VTsfTFUHCdrfp1bgwQ9xv5ski8PX9rL2dZXvgGDnw",
+		"xpub6ASuArnXKPbfEwhqN6e3mwBcDTgzisQN1wXN9BJcM47sSikHjJf3UFHKkNAWbWMiGj7Wf5uMash7SyYq527Hqck2AxYysAA7xmALppuCkwQ",
+		"xpub6D4BDPcP2GT577Vvch3R8wDkScZWzQzMMUm3PWbmWvVJrZwQY4VUNgqFJPMM3No2dFDFGTsxxpG5uJh7n7epu4trkrX7x7DogT5Uv6fcLW5",
+		"xpub6FHa3pjLCk84BayeJxFW2SP4XRrFd1JYnxeLeU8EqN3vDfZmbqBqaGJAyiLjTAwm6ZLRQUMv1ZACTj37sR62cfN7fe5JnJ7dh8zL4fiyLHV",
+		"xpub6H1LXWLaKsWFhvm6RVpEL9P4KfRZSW7abD2ttkWP3SSQvnyA8FSVqNTEcYFgJS2UaFcxupHiYkro49S8yGasTvXEYBVPamhGW6cFJodrTHy"
+	};
+
+	@Test
+	public void testHmacMatchesReference() {
+		byte [][] keys = { new byte[0], "key".getBytes(), new byte[128], new byte[200] };
+		byte [] data = "the quick brown fox jumps over the lazy dog".getBytes();
+
+		for(byte [] key: keys) {
+			HMac reference = new HMac(new SHA512Digest());
+			reference.init(new KeyParameter(key));
+			reference.update(data, 0, data.length);
+			byte [] expected = new byte[64];
+			reference.doFinal(expected, 0);
+
+			PrecomputedHmac.Context context = PrecomputedHmac.sha512(key).newContext();
+			byte [] actual = new byte[64];
+
+			// repeated use of the same context yields the same mac
+			for(int i = 0; i < 3; i++) {
+				context.mac(data, 0, data.length, actual, 0);
+				assertArrayEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void testPrivateDerivation() {
+		DeterministicKey parent = masterKey();
+		DerivationEngine engine = new DerivationEngine(parent);
+
+		for(int i = 0; i < CHILDREN; i++) {
+			assertSameKey(HDKeyDerivation.deriveChildKey(parent, new ChildNumber(i, false)), engine.deriveChild(i, false));
+			assertSameKey(HDKeyDerivation.deriveChildKey(parent, new ChildNumber(i, true)), engine.deriveChild(i, true));
+		}
+	}
+
+	@Test
+	public void testPublicDerivation() {
+		DeterministicKey parent = masterKey().dropPrivateBytes().dropParent();
+		DerivationEngine engine = new DerivationEngine(parent);
+
+		for(int i = 0; i < CHILDREN; i++) {
+			assertSameKey(HDKeyDerivation.deriveChildKey(parent, new ChildNumber(i, false)), engine.deriveChild(i, false));
+		}
+	}
+
+	@Test
+	public void testFixedBaseMultiplier() {
+		Random random = new Random(7);
+		BigInteger n = ECKey.CURVE.getN();
+		List<BigInteger> scalars = new ArrayList<>(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(255), n.subtract(BigInteger.ONE), BigInteger.ONE.shiftLeft(255)));
+
+		for(int i = 0; i < CHILDREN; i++) {
+			scalars.add(new BigInteger(256, random).mod(n));
+		}
+
+		for(int window: new int [] { 2, 5, FixedBaseMultiplier.WINDOW_DEFAULT }) {
+			FixedBaseMultiplier multiplier = new FixedBaseMultiplier(window);
+
+			for(BigInteger k: scalars) {
+				assertEquals(ECKey.publicPointFromPrivate(k), multiplier.multiply(k));
+			}
+
+			log("window %d: %d table points", window, multiplier.getTableSize());
+		}
+
+		assertTrue(new FixedBaseMultiplier(3).multiply(n).isInfinity());
+
+		// batch normalization skips points at infinity, also the first one
+		scalars.add(0, n);
+		scalars.add(3, n);
+		ECPoint [] points = FixedBaseMultiplier.getInstance().multiplyAll(scalars.toArray(new BigInteger[0]), null);
+
+		for(int i = 0; i < points.length; i++) {
+			assertEquals(scalars.get(i).equals(n) ? null : ECKey.publicPointFromPrivate(scalars.get(i)), points[i]);
+		}
+	}
+
+	@Test
+	public void testBatchDerivation() {
+		DeterministicKey parent = masterKey();
+
+		for(DeterministicKey key: new DeterministicKey [] { parent, parent.dropPrivateBytes().dropParent() }) {
+			DerivationEngine engine = new DerivationEngine(key);
+			ECKey [] keys = engine.deriveKeys(7, CHILDREN);
+
+			assertEquals(CHILDREN, keys.length);
+
+			for(int i = 0; i < CHILDREN; i++) {
+				DeterministicKey expected = HDKeyDerivation.deriveChildKey(key, new ChildNumber(7 + i, false));
+				assertArrayEquals(expected.getPubKey(), keys[i].getPubKey());
+				assertEquals(expected.hasPrivKey(), keys[i].hasPrivKey());
+
+				if(expected.hasPrivKey()) {
+					assertArrayEquals(expected.getPrivKeyBytes(), keys[i].getPrivKeyBytes());
+				}
+			}
+		}
+
+		assertEquals(0, new DerivationEngine(parent).deriveKeys(0, 0).length);
+	}
+
+	@Test
+	public void testBip32Vector() throws Exception {
+		// https://github.com/bitcoin/bips/blob/master/bip-0032.mediawiki#test-vector-1
+		DeterministicKey root = HDKeyDerivation.createMasterPrivateKey(Hex.decodeHex("000102030405060708090a0b0c0d0e0f".toCharArray()));
+		ChildNumber [] path = { new ChildNumber(0, true), new ChildNumber(1, false), new ChildNumber(2, true), new ChildNumber(2, false), new ChildNumber(1000000000, false) };
+		String [] xprv = BIP32_VECTOR_1_XPRV;
+		String [] xpub = BIP32_VECTOR_1_XPUB;
+		NetworkParameters params = MainNetParams.get();
+
+		for(FixedBaseMultiplier multiplier: new FixedBaseMultiplier [] { new FixedBaseMultiplier(4), FixedBaseMultiplier.getInstance() }) {
+			DeterministicKey key = root;
+			DeterministicKey reference = root;
+
+			for(int i = 0; i < path.length; i++) {
+				key = new DerivationEngine(key, multiplier).deriveChild(path[i]);
+				reference = HDKeyDerivation.deriveChildKey(reference, path[i]);
+
+				assertSameKey(reference, key);
+				assertEquals(xprv[i], key.serializePrivB58(params));
+				assertEquals(xpub[i], key.serializePubB58(params));
+
+				// public derivation from the parent xpub
+				if(!path[i].isHardened()) {
+					DeterministicKey parentPub = key.getParent().dropPrivateBytes().dropParent();
+					DeterministicKey child = new DerivationEngine(parentPub, multiplier).deriveChild(path[i]);
+					assertArrayEquals(reference.getPubKey(), child.getPubKey());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInjectedMultiplier() throws Exception {
+		FixedBaseMultiplier multiplier = new FixedBaseMultiplier(3);
+		DerivationEngine engine = new DerivationEngine(masterKey(), multiplier);
+
+		assertTrue(engine.deriveEngine(44, true).deriveEngine(0, false).getMultiplier() == multiplier);
+
+		NetworkParameters params = MainNetParams.get();
+		Wordlist wordlist = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT);
+		Wallet expected = new Wallet(wordlist, params, WalletTest.WALLET_SEED_BYTES, "");
+		Wallet wallet = WalletFactory.getInstance(null, multiplier).restoreWallet(WalletTest.WALLET_MNEMONIC, "");
+
+		assertTrue(WalletFactory.getInstance(null, multiplier).getMultiplier() == multiplier);
+		assertEquals(expected.getPath(), wallet.getPath());
+		assertEquals(expected.getAccount(0).xpubstr(), wallet.getAccount(0).xpubstr());
+
+		for(int chain = 0; chain < 2; chain++) {
+			List<Address> addresses = wallet.getAccount(0).getChain(chain).deriveAddresses(0, CHILDREN);
+
+			for(int i = 0; i < CHILDREN; i++) {
+				assertEquals(expected.getAccount(0).getChain(chain).getAddressAt(i).getAddressString(), addresses.get(i).getAddressString());
+			}
+		}
+	}
+
+	private DeterministicKey masterKey() {
+		try {
+			byte [] seed = MnemonicCode.toSeed(new MnemonicCode().toMnemonic(WalletTest.WALLET_SEED_BYTES), "");
+			return HDKeyDerivation.createMasterPrivateKey(seed);
+		} 
+		catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void assertSameKey(DeterministicKey expected, DeterministicKey actual) {
+		assertEquals(expected.getPathAsString(), actual.getPathAsString());
+		assertArrayEquals(expected.getChainCode(), actual.getChainCode());
+		assertArrayEquals(expected.getPubKey(), actual.getPubKey());
+		assertEquals(expected.hasPrivKey(), actual.hasPrivKey());
+		assertEquals(expected.serializePubB58(MainNetParams.get()), actual.serializePubB58(MainNetParams.get()));
+
+		if(expected.hasPrivKey()) {
+			assertArrayEquals(expected.getPrivKeyBytes(), actual.getPrivKeyBytes());
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class EntropyServiceTest extends BaseTest {
+
+	@Test
+	public void testReseed() {
+		AtomicLong time = new AtomicLong();
+		EntropyService entropy = new EntropyService(1000, 64, time::get);
+
+		entropy.nextSeed(32);
+		entropy.nextSeed(32);
+		assertEquals(1, entropy.getReseeds());
+
+		// byte count reached
+		entropy.nextSeed(16);
+		assertEquals(2, entropy.getReseeds());
+
+		// reseed interval passed
+		time.addAndGet(1001);
+		entropy.nextSeed(16);
+		assertEquals(3, entropy.getReseeds());
+		assertEquals(96, entropy.getBytesServed());
+
+		log("algorithm: %s, bytes served: %d, reseeds: %d", entropy.getAlgorithm(), entropy.getBytesServed(), entropy.getReseeds());
+	}
+
+	@Test
+	public void testPrefillAndThreads() throws Exception {
+		EntropyService entropy = new EntropyService();
+		Set<ByteBuffer> seeds = Collections.synchronizedSet(new HashSet<>());
+
+		entropy.startPrefill(16, 8);
+
+		for(int i = 0; i < 100 && entropy.getBufferedSeeds() < 8; i++) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(8, entropy.getBufferedSeeds());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		for(int i = 0; i < 400; i++) {
+			executor.submit(() -> seeds.add(ByteBuffer.wrap(entropy.nextSeed(16))));
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+		entropy.stopPrefill();
+
+		assertEquals(400, seeds.size());
+		assertTrue(entropy.getBufferHits() >= 8);
+		assertEquals(0, entropy.getBufferedSeeds());
+		assertFalse(seeds.contains(ByteBuffer.wrap(new byte[16])));
+		log("buffer hits: %d, reseeds: %d", entropy.getBufferHits(), entropy.getReseeds());
+	}
+}
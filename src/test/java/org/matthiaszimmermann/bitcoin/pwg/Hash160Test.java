@@ -0,0 +1,85 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.junit.Test;
+
+public class Hash160Test extends BaseTest {
+
+	@Test
+	public void testMatchesBitcoinj() {
+		Random random = new Random(5);
+
+		for(int length: new int [] { 0, 1, 33, 55, 56, 64, 65, 200 }) {
+			byte [] data = new byte[length];
+			random.nextBytes(data);
+
+			assertArrayEquals(Utils.sha256hash160(data), Hash160.hash160(data));
+
+			// results go to the provided offset
+			byte [] out = new byte[30];
+			Hash160.hash160(data, 0, length, out, 7);
+			assertArrayEquals(Utils.sha256hash160(data), Arrays.copyOfRange(out, 7, 27));
+
+			Hash160.checksum(data, 0, length, out, 3);
+			assertArrayEquals(Arrays.copyOf(Sha256Hash.hashTwice(data), 4), Arrays.copyOfRange(out, 3, 7));
+		}
+
+		for(NetworkParameters params: new NetworkParameters [] { MainNetParams.get(), TestNet3Params.get() }) {
+			ECKey key = new ECKey();
+			String expected = key.toAddress(params).toString();
+			assertEquals(expected, Hash160.toAddress(params.getAddressHeader(), key.getPubKeyHash()));
+		}
+	}
+
+	@Test
+	public void testBatch() {
+		Random random = new Random(9);
+
+		// lane groups, left over keys and uncompressed keys in between
+		byte [][] keys = new byte[3 * BatchHash160.LANES + 5][];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = new byte[i % 7 == 3 ? 65 : BatchHash160.KEY_LENGTH];
+			random.nextBytes(keys[i]);
+		}
+
+		byte [][] hashes = BatchHash160.hash160(keys);
+
+		for(int i = 0; i < keys.length; i++) {
+			assertArrayEquals(Utils.sha256hash160(keys[i]), hashes[i]);
+		}
+
+		// fewer keys than lanes only take the scalar path
+		byte [][] few = Arrays.copyOf(keys, BatchHash160.LANES - 1);
+		byte [][] fewHashes = BatchHash160.hash160(few);
+
+		for(int i = 0; i < few.length; i++) {
+			assertArrayEquals(hashes[i], fewHashes[i]);
+		}
+	}
+
+	@Test
+	public void testThreads() {
+		List<byte []> keys = IntStream.range(0, 1000).mapToObj(i -> new ECKey().getPubKey()).collect(Collectors.toList());
+		List<byte []> hashes = keys.parallelStream().map(Hash160::hash160).collect(Collectors.toList());
+
+		for(int i = 0; i < keys.size(); i++) {
+			assertArrayEquals(Utils.sha256hash160(keys.get(i)), hashes.get(i));
+		}
+
+		log("hashed %d public keys in parallel", keys.size());
+	}
+}
@@ -0,0 +1,43 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import java.util.Random;
+
+import org.bitcoinj.core.Utils;
+
+/**
+ * Compares hash160 of compressed public keys: bitcoinj, per thread digests
+ * and lane groups. Optional argument: number of keys per round.
+ */
+public class HashBenchmark extends BaseBenchmark {
+
+	public static void main(String [] args) {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int rounds = 50;
+		Random random = new Random(1);
+
+		byte [][] keys = new byte[count][BatchHash160.KEY_LENGTH];
+		byte [][] hashes = new byte[count][Hash160.HASH_LENGTH];
+		for(byte [] key: keys) {
+			random.nextBytes(key);
+			key[0] = (byte) (2 + (key[0] & 1));
+		}
+
+		double bitcoinj = measure("Utils.sha256hash160", rounds, r -> {
+			for(byte [] key: keys) {
+				Utils.sha256hash160(key);
+			}
+		}) * count;
+
+		double scalar = measure("Hash160.hash160", rounds, r -> {
+			for(int i = 0; i < count; i++) {
+				Hash160.hash160(keys[i], 0, keys[i].length, hashes[i], 0);
+			}
+		}) * count;
+
+		double lanes = measure("BatchHash160 (" + BatchHash160.LANES + " lanes)", rounds, r -> BatchHash160.hash160(keys, hashes)) * count;
+
+		log(String.format("hashes per second: bitcoinj %.0f, per thread %.0f, lanes %.0f", bitcoinj, scalar, lanes));
+		log(String.format("speedup per thread digests: %.2f", scalar / bitcoinj));
+		log(String.format("speedup lane groups: %.2f", lanes / scalar));
+	}
+}
@@ -0,0 +1,64 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Hex;
+import org.bitcoinj.crypto.MnemonicCode;
+import org.junit.Test;
+
+public class Pbkdf2Test extends BaseTest {
+
+	// https://github.com/trezor/python-mnemonic/blob/master/vectors.json (pass phrase "TREZOR")
+	public static final String BIP39_PASS_PHRASE = "TREZOR";
+	public static final String [][] BIP39_VECTORS = {
+			{ "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about", 
+			"c55257c360c07c72029aebc1b53c05ed0362ada38ead3e3e9efa3708e53495531f09a6987599d18264c1e1c92f2cf141630c7a3c4ab7c81b2f001698e7463b04" },
+			{ "legal winner thank year wave sausage worth useful legal winner thank yellow", 
+			"2e8905819b8723fe2c1d161860e5ee1830318dbf49a83bd451cfb8440c28bd6fa457fe1296106559a3c80937a1c1069be3a3a5bd381ee6260e8d9739fce1f607" },
+			{ "zoo zoo zoo zoo zoo zoo zoo zoo zoo zoo zoo wrong", 
+			"ac27495480225222079d7be181583751e86f571027b0497b5b5d11218e0a8a13332572917f0f8e5a589620c6f15b11c61dee327651a14c34e18231052e48c069" },
+	};
+
+	@Test
+	public void testBip39Vectors() {
+		for(String [] vector: BIP39_VECTORS) {
+			List<String> words = Arrays.asList(vector[0].split(" "));
+			String seed = Hex.encodeHexString(Pbkdf2.bip39Seed(words, BIP39_PASS_PHRASE));
+
+			log("mnemonic: '%s' seed: %s", vector[0], seed);
+			assertEquals(vector[1], seed);
+		}
+	}
+
+	@Test
+	public void testMatchesMnemonicCode() throws Exception {
+		MnemonicCode mc = new MnemonicCode();
+		SecureRandom random = new SecureRandom();
+
+		for(int i = 0; i < 5; i++) {
+			byte [] entropy = new byte[16 + 4 * i];
+			random.nextBytes(entropy);
+			List<String> words = mc.toMnemonic(entropy);
+
+			assertArrayEquals(MnemonicCode.toSeed(words, ""), Pbkdf2.bip39Seed(words, ""));
+			assertArrayEquals(MnemonicCode.toSeed(words, "pass"), Pbkdf2.bip39Seed(words, "pass"));
+		}
+	}
+
+	@Test
+	public void testMultipleBlocks() {
+		// RFC 6070 style check with a key longer than one HMAC-SHA512 output
+		byte [] key = Pbkdf2.deriveSha512("password".getBytes(), "salt".getBytes(), 2, 100);
+		byte [] prefix = Pbkdf2.deriveSha512("password".getBytes(), "salt".getBytes(), 2, 64);
+
+		assertEquals(100, key.length);
+		assertArrayEquals(prefix, Arrays.copyOf(key, 64));
+		assertEquals("e1d9c16aa681708a45f5c7c4e215ceb66e011a2e9f0040713f18aefdb866d53cf76cab2868a39b9f7840edce4fef5a82be67335c77a6068e04112754f27ccf4e", 
+				Hex.encodeHexString(prefix));
+	}
+}
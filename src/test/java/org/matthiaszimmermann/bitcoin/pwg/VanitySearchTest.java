@@ -0,0 +1,101 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bitcoinj.core.Base58;
+import org.junit.Test;
+
+public class VanitySearchTest extends BaseTest {
+
+	private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+
+	@Test
+	public void testRangesMatchEncoding() {
+		Random random = new Random(11);
+		byte [] hash = new byte[Hash160.HASH_LENGTH];
+
+		for(String prefix: new String [] { "1", "11", "111", "1A", "12", "1Q", "1R", "1z", "1Bo", "11x" }) {
+			VanitySearch search = new VanitySearch(prefix, 1);
+			int matches = 0;
+
+			for(int i = 0; i < 2000; i++) {
+				BigInteger value;
+
+				// random hashes and hashes next to addresses starting with the prefix
+				if(i % 2 == 0) {
+					random.nextBytes(hash);
+					value = new BigInteger(1, hash);
+				}
+				else {
+					StringBuilder address = new StringBuilder(prefix);
+
+					while(address.length() < 34 - random.nextInt(3)) {
+						address.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+					}
+
+					value = Base58.decodeToBigInteger(address.toString()).shiftRight(32).add(BigInteger.valueOf(random.nextInt(3) - 1));
+				}
+
+				if(value.signum() < 0 || value.bitLength() > 8 * Hash160.HASH_LENGTH) {
+					continue;
+				}
+
+				toHash(value, hash);
+				boolean expected = Hash160.toAddress(0, hash).startsWith(prefix);
+				assertEquals(prefix + " " + value.toString(16), expected, search.matches(hash));
+				matches += expected ? 1 : 0;
+			}
+
+			log("prefix %s: one in %.1f wallets, %d of 2000 hashes match", prefix, search.getExpectedCandidates(), matches);
+		}
+
+		assertEquals(1.0, new VanitySearch("1", 1).getProbability(), 1e-12);
+		assertEquals(1.0 / 256, new VanitySearch("11", 1).getProbability(), 1e-12);
+	}
+
+	@Test
+	public void testInvalidPrefix() {
+		for(String prefix: new String [] { "", "3J98", "1O", "1Il", "1zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz" }) {
+			try {
+				new VanitySearch(prefix, 1);
+				fail("prefix accepted: " + prefix);
+			}
+			catch(IllegalArgumentException e) {
+				log("prefix '%s' rejected: %s", prefix, e.getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		VanitySearch search = new VanitySearch("1A", 2);
+		VanitySearch.Result result = search.search(0, 200, progress -> log(progress.toString()));
+		log("%d wallets tried in %d ms", result.getCandidates(), result.getMillis());
+
+		assertTrue(result.isFound());
+
+		Wallet wallet = WalletFactory.getInstance().newWallet(result.getEntropy(), "");
+		String address = wallet.getAddress().getAddressString();
+		log("vanity address: %s", address);
+		assertTrue(address.startsWith("1A"));
+
+		// limited search without a match
+		result = new VanitySearch("1111", 1).search(3, 200, null);
+		assertTrue(!result.isFound());
+		assertEquals(3, result.getCandidates());
+	}
+
+	private static void toHash(BigInteger value, byte [] hash) {
+		byte [] bytes = value.toByteArray();
+		int length = Math.min(bytes.length, hash.length);
+
+		Arrays.fill(hash, (byte) 0);
+		System.arraycopy(bytes, bytes.length - length, hash, hash.length - length, length);
+	}
+}
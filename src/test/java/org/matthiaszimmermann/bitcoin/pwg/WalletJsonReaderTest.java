@@ -0,0 +1,74 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.commons.codec.DecoderException;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.params.MainNetParams;
+import org.junit.Test;
+
+public class WalletJsonReaderTest extends BaseTest {
+
+	private static final NetworkParameters PARAMS = MainNetParams.get();
+
+	@Test
+	public void testReadWalletFile() throws Exception {
+		WalletFile walletFile = WalletJsonReader.read(WalletTest.WALLET_JSON_OK, PARAMS);
+
+		assertEquals(Wallet.JSON_VERSION_VALUE, walletFile.getVersion());
+		assertEquals("7RFrnKNxd+xIUlFYK05cMw==", walletFile.getSeed().getIv());
+		assertEquals(4, walletFile.getAddresses().size());
+
+		for(WalletFile.Entry entry: walletFile.getAddresses()) {
+			byte [] expected = org.bitcoinj.core.Address.fromBase58(PARAMS, entry.getAddress()).getHash160();
+			assertArrayEquals(expected, entry.getHash160());
+			assertTrue(entry.getPath().endsWith("/" + entry.getIndex()));
+		}
+	}
+
+	@Test
+	public void testRejectCorruptFiles() {
+		String ok = WalletTest.WALLET_JSON_OK;
+
+		assertRejected("empty file", "  ");
+		assertRejected("foreign json", "{\"name\":\"foo\",\"values\":[1,2,3]}");
+		assertRejected("truncated", ok.substring(0, ok.length() - 23));
+		assertRejected("trailing content", ok + "{}");
+		assertRejected("bad version", ok.replace("\"1.0\"", "\"0.1\""));
+		assertRejected("duplicate property", ok.replace("{\"seed\":", "{\"iv\":\"\",\"seed\":"));
+		assertRejected("bad iv", ok.replace("7RFrnKNxd+xIUlFYK05cMw==", "7RFrnKNxd+xIUlFY"));
+		assertRejected("address checksum", ok.replace("1JcGxWyYoqnU9DHGnt8RsKYyz738bKvydU", "1JcGxWyYoqnU9DHGnt8RsKYyz738bKvydV"));
+		assertRejected("address path", ok.replace("M/44H/0H/0H/1/1", "M/44H/0H/0H/1/2"));
+		assertRejected("chain path", ok.replace("\"M/44H/0H/0H/1\"", "\"M/44H/0H/0H/2\""));
+		assertRejected("duplicate chain", ok.replace("\"M/44H/0H/0H/1\"", "\"M/44H/0H/0H/0\""));
+		assertRejected("missing seed", WalletTest.WALLET_JSON_OK.replace("\"seed\":\"dQYSjX6+aGmzn7AhDZhNJnIx8rvjfttgCQL0khMums4=\",", ""));
+	}
+
+	@Test
+	public void testReadBatchWalletFile() throws Exception {
+		Wallet wallet = WalletFactory.getInstance().newWallet(WalletTest.WALLET_SEED_BYTES, WalletTest.WALLET_PASS_PHRASE);
+		BatchKey batchKey = new BatchKey(WalletTest.WALLET_PASS_PHRASE, null, 1024);
+		String json = new WalletSnapshot(wallet, batchKey).getJson();
+
+		WalletFile walletFile = WalletJsonReader.read(json, PARAMS);
+		assertEquals(Wallet.JSON_VERSION_BATCH_VALUE, walletFile.getVersion());
+		assertEquals(1024, walletFile.getSeed().getKdfIterations());
+
+		assertRejected("missing kdf salt", json.replace("\"kdfSalt\"", "\"other\""));
+		assertRejected("iterations", json.replace("\"kdfIterations\": 1024", "\"kdfIterations\": 0"));
+		assertRejected("iterations", json.replace("\"kdfIterations\": 1024", "\"kdfIterations\": 999999999"));
+	}
+
+	private void assertRejected(String description, String json) {
+		try {
+			WalletJsonReader.read(json, PARAMS);
+			fail("accepted corrupt wallet file: " + description);
+		}
+		catch (DecoderException e) {
+			log("%s: %s", description, e.getMessage());
+		}
+	}
+}
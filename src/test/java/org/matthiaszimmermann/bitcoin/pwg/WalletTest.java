@@ -2,12 +2,24 @@ package org.matthiaszimmermann.bitcoin.pwg;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.bitcoinj.core.DumpedPrivateKey;
+import org.bitcoinj.core.ECKey;
 import org.bitcoinj.core.NetworkParameters;
 import org.bitcoinj.crypto.MnemonicCode;
 import org.bitcoinj.crypto.MnemonicException.MnemonicChecksumException;
@@ -36,6 +48,102 @@ public class WalletTest extends BaseTest {
 		assertEquals(WALLET_PASS_PHRASE, wallet.getPassphrase());
 	}
 
+	@Test
+	public void testWalletBatchJson() throws Exception {
+		NetworkParameters params = MainNetParams.get();
+		Wallet wallet = new Wallet(new MnemonicCode(), params, WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		BatchKey batchKey = new BatchKey(WALLET_PASS_PHRASE);
+		
+		JSONObject json1 = wallet.toJSON(batchKey);
+		JSONObject json2 = wallet.toJSON(batchKey);
+		log("wallet in json format version 2.0:\n%s", json1.toString(2));
+		
+		assertEquals(Wallet.JSON_VERSION_BATCH_VALUE, json1.getString(Wallet.JSON_VERSION));
+		assertEquals(json1.getString(Wallet.JSON_KDF_SALT), json2.getString(Wallet.JSON_KDF_SALT));
+		assertNotEquals(json1.getString(Wallet.JSON_SALT), json2.getString(Wallet.JSON_SALT));
+		
+		Wallet restored = WalletFactory.getInstance().restoreWalletFromJSON(json2, WALLET_PASS_PHRASE);
+		assertEquals(WALLET_MNEMONIC, restored.getMnemonic());
+		
+		try {
+			WalletFactory.getInstance().restoreWalletFromJSON(json1, "wrong pass phrase");
+			fail("restored version 2.0 wallet with wrong pass phrase");
+		}
+		catch (Exception e) {
+			log("expected exception for wrong pass phrase: %s", e);
+		}
+		
+		// without a pass phrase there is nothing to encrypt, version 1.0 is written
+		Wallet plain = new Wallet(new MnemonicCode(), params, WALLET_SEED_BYTES, "");
+		assertEquals(Wallet.JSON_VERSION_VALUE, plain.toJSON(batchKey).getString(Wallet.JSON_VERSION));
+	}
+
+	@Test
+	public void testJsonWriter() throws Exception {
+		JSONObject expected = new JSONObject(WALLET_JSON_OK);
+		Wallet wallet = WalletFactory.getInstance().restoreWalletFromJSON(expected, WALLET_PASS_PHRASE);
+		EncryptedSeed seed = new EncryptedSeed(expected.getString(Wallet.JSON_SEED), expected.getString(Wallet.JSON_IV));
+		
+		String compact = WalletJsonWriter.toString(wallet, seed, 0);
+		String indented = WalletJsonWriter.toString(wallet, seed, 2);
+		log("wallet written by json writer:\n%s", indented);
+		
+		// same document as the reference wallet file, properties in fixed order
+		assertEquals(expected.toString(), new JSONObject(compact).toString());
+		assertEquals(expected.toString(), new JSONObject(indented).toString());
+		assertTrue(compact.startsWith("{\"version\":\"1.0\",\"seed\":"));
+		assertTrue(indented.startsWith("{\n  \"version\": \"1.0\",\n  \"seed\": "));
+		assertEquals(compact, indented.replaceAll("\n *", "").replace("\": ", "\":"));
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		WalletJsonWriter.write(wallet, seed, buffer, 0);
+		assertEquals(compact, new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+		
+		assertEquals(WALLET_MNEMONIC, WalletFactory.getInstance().restoreWalletFromJSON(new JSONObject(indented), WALLET_PASS_PHRASE).getMnemonic());
+	}
+
+	@Test
+	public void testPaperWalletSnapshot() throws Exception {
+		Wallet wallet = new Wallet(new MnemonicCode(), MainNetParams.get(), WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		PaperWallet paperWallet = new PaperWallet(wallet, System.getProperty("java.io.tmpdir"));
+		
+		WalletSnapshot snapshot = paperWallet.getSnapshot();
+		assertSame(snapshot, paperWallet.getSnapshot());
+		assertEquals(snapshot.getJson(), snapshot.getJson(WalletSnapshot.JSON_INDENT));
+		assertEquals(new JSONObject(snapshot.getJson()).toString(), new JSONObject(paperWallet.getFileContent()).toString());
+		assertTrue(paperWallet.getFileContent().startsWith("{\n    \""));
+		assertEquals(snapshot.getSeed(), paperWallet.getJson().getString(Wallet.JSON_SEED));
+		assertEquals(wallet.getAddress().getAddressString(), snapshot.getAddress());
+		
+		// html page shows the same encrypted seed as the wallet file
+		String html = WalletPageUtility.createHtml(paperWallet);
+		assertTrue(html.contains(snapshot.getSeed()));
+		assertSame(snapshot, paperWallet.getSnapshot());
+	}
+
+	@Test
+	public void testWalletJsonKeyCache() throws Exception {
+		Wallet wallet = new Wallet(new MnemonicCode(), MainNetParams.get(), WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		DerivedKeyCache cache = new DerivedKeyCache();
+		
+		JSONObject json1 = wallet.toJSON(null, cache);
+		JSONObject json2 = wallet.toJSON(null, cache);
+		WalletSnapshot snapshot = new PaperWallet(wallet, System.getProperty("java.io.tmpdir"), null, cache).getSnapshot();
+		log("hits=%d misses=%d", cache.getHits(), cache.getMisses());
+		
+		// the version 1.0 key is derived once, every serialization still gets a fresh iv
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+		assertNotEquals(json1.getString(Wallet.JSON_IV), json2.getString(Wallet.JSON_IV));
+		
+		for(JSONObject json: new JSONObject [] { json1, json2, new JSONObject(snapshot.getJson()) }) {
+			Wallet restored = WalletFactory.getInstance().restoreWalletFromJSON(json, WALLET_PASS_PHRASE);
+			assertEquals(WALLET_MNEMONIC, restored.getMnemonic());
+		}
+		
+		cache.clear();
+	}
+
 	@Test
 	public void testWalletFromSeed() throws Exception {
 		NetworkParameters params = MainNetParams.get();
@@ -74,6 +182,93 @@ public class WalletTest extends BaseTest {
 		assertEquals(WALLET_PASS_PHRASE, wallet.getPassphrase());		
 	}
 
+	@Test
+	public void testFactoryConcurrentRestore() throws Exception {
+		String otherMnemonic = "sword acquire little despair wave swear during expect target science banana eyebrow";
+		WalletFactory factory = WalletFactory.getInstance();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<Wallet>> wallets = new ArrayList<>();
+
+		for(int i = 0; i < 16; i++) {
+			String mnemonic = i % 2 == 0 ? WALLET_MNEMONIC : otherMnemonic;
+			wallets.add(executor.submit(() -> factory.restoreWallet(mnemonic, WALLET_PASS_PHRASE)));
+		}
+
+		for(int i = 0; i < wallets.size(); i++) {
+			String mnemonic = i % 2 == 0 ? WALLET_MNEMONIC : otherMnemonic;
+			assertEquals(mnemonic, wallets.get(i).get().getMnemonic());
+		}
+
+		executor.shutdown();
+	}
+
+	@Test
+	public void testChainAddressCache() throws Exception {
+		NetworkParameters params = MainNetParams.get();
+		Wallet wallet = new Wallet(new MnemonicCode(), params, WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		Chain receive = wallet.getAccount(0).getReceive();
+
+		Address first = receive.getAddressAt(0);
+		assertEquals(1, receive.getCacheMisses());
+		assertEquals(0, receive.getCacheHits());
+
+		assertSame(first, receive.getAddressAt(0));
+		assertSame(first, wallet.getAddress());
+		assertEquals(1, receive.getCacheMisses());
+		assertEquals(2, receive.getCacheHits());
+
+		// indices beyond the array part are cached in the map
+		int index = AddressCache.ARRAY_SIZE + 7;
+		Address high = receive.getAddressAt(index);
+		assertSame(high, receive.getAddressAt(index));
+		assertEquals(2, receive.getCacheMisses());
+		assertEquals(Wallet.BIP_44_PATH_RECEIVE + "/" + index, high.getPath());
+	}
+
+	@Test
+	public void testAddressValues() throws Exception {
+		NetworkParameters params = MainNetParams.get();
+		Wallet wallet = new Wallet(new MnemonicCode(), params, WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		Address address = wallet.getAccount(0).getChange().getAddressAt(1);
+
+		assertEquals("M/44H/0H/0H/1/1", address.getPath());
+		assertEquals("18gXGiQ2dfCVTFioJp35bTANjzmVczyyHA", address.getAddressString());
+		assertSame(address.getAddressString(), address.getAddressString());
+		assertArrayEquals(address.getPubKeyHash(), address.getAddress().getHash160());
+		assertEquals(address.getAddressString(), address.getAddress().toString());
+
+		// key built from the precalculated public point matches a key built from the private key alone
+		ECKey key = ECKey.fromPrivate(DumpedPrivateKey.fromBase58(params, address.getPrivateKeyString()).getKey().getPrivKey(), true);
+		assertArrayEquals(key.getPubKey(), address.getPubKey());
+		assertEquals(key.getPrivateKeyAsWiF(params), address.getPrivateKeyString());
+	}
+
+	@Test
+	public void testChainAddressRange() throws Exception {
+		NetworkParameters params = MainNetParams.get();
+		Wallet wallet = new Wallet(new MnemonicCode(), params, WALLET_SEED_BYTES, WALLET_PASS_PHRASE);
+		Account account = wallet.getAccount(0);
+		Account watchOnly = new Account(params, account.xpubstr(), 0);
+
+		List<String> expected = new ArrayList<>();
+		for(int i = 100; i < 300; i++) {
+			expected.add(account.getReceive().getAddressAt(i).getAddressString());
+		}
+
+		List<String> sequential = account.getReceive().addresses(100, 200)
+				.map(Address::getAddressString)
+				.collect(Collectors.toList());
+
+		List<String> parallel = watchOnly.getReceive().addresses(100, 200)
+				.parallel()
+				.map(Address::getAddressString)
+				.collect(Collectors.toList());
+
+		assertEquals(expected, sequential);
+		assertEquals(expected, parallel);
+		assertEquals(0, account.getReceive().addresses(5, 0).count());
+	}
+
 	private List<String> toList(String mnemonic) {
 		List<String> list = new ArrayList<>();
 		
@@ -0,0 +1,105 @@
+package org.matthiaszimmermann.bitcoin.pwg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.bitcoinj.crypto.MnemonicCode;
+import org.bitcoinj.crypto.MnemonicException;
+import org.bitcoinj.crypto.MnemonicException.MnemonicChecksumException;
+import org.bitcoinj.crypto.MnemonicException.MnemonicLengthException;
+import org.bitcoinj.crypto.MnemonicException.MnemonicWordException;
+import org.junit.Test;
+
+public class WordlistTest extends BaseTest {
+
+	@Test
+	public void testMatchesMnemonicCode() throws Exception {
+		MnemonicCode mc = new MnemonicCode();
+		Wordlist wordlist = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT);
+		Random random = new Random(42);
+
+		assertSame(wordlist, Wordlist.forLocale(Locale.GERMANY));
+		assertEquals(mc.getWordList(), wordlist.getWords());
+
+		for(int length: new int [] { 16, 20, 24, 28, 32 }) {
+			for(int i = 0; i < 50; i++) {
+				byte [] entropy = new byte[length];
+				random.nextBytes(entropy);
+
+				List<String> words = mc.toMnemonic(entropy);
+				assertEquals(words, wordlist.toMnemonic(entropy));
+				assertArrayEquals(entropy, wordlist.toEntropy(words));
+			}
+		}
+
+		List<String> words = Arrays.asList(WalletTest.WALLET_MNEMONIC.split(" "));
+		assertArrayEquals(WalletTest.WALLET_SEED_BYTES, wordlist.toEntropy(words));
+
+		assertRejected(wordlist, MnemonicChecksumException.class, WalletTest.WALLET_MNEMONIC.replace("puppy", "zoo"));
+		assertRejected(wordlist, MnemonicWordException.class, WalletTest.WALLET_MNEMONIC.replace("puppy", "puppies"));
+		assertRejected(wordlist, MnemonicLengthException.class, WalletTest.WALLET_MNEMONIC.replace(" puppy", ""));
+	}
+
+	@Test
+	public void testMatchPaperWords() throws Exception {
+		Wordlist wordlist = Wordlist.forLocale(WalletFactory.LOCALE_DEFAULT);
+
+		assertEquals(0, wordlist.indexOf("abandon"));
+		assertEquals(-1, wordlist.indexOf("aban"));
+		assertEquals("abandon", wordlist.match("aban"));
+		assertEquals("abandon", wordlist.match("ABAN"));
+		assertEquals("act", wordlist.match("act"));
+		assertEquals("actor", wordlist.match("acto"));
+		assertNull(wordlist.match("ab"));
+		assertNull(wordlist.match("aba"));
+		assertNull(wordlist.match("xyzw"));
+
+		// misspelled or longer words are never corrected
+		assertNull(wordlist.match("ABANDN"));
+		assertNull(wordlist.match("abanzzz"));
+		assertNull(wordlist.match("abandonment"));
+
+		String paper = "angl end trad shiv titl lear shov top wond exot lamp pupp";
+		Wallet wallet = WalletFactory.getInstance().restoreWallet(paper, "");
+		assertEquals(WalletTest.WALLET_MNEMONIC, wallet.getMnemonic());
+		log("restored from '%s': %s", paper, wallet.getMnemonic());
+
+		try {
+			WalletFactory.getInstance().restoreWallet(WalletTest.WALLET_MNEMONIC.replace("puppy", "puppies"), "");
+			fail("restored wallet from a misspelled word");
+		}
+		catch (MnemonicWordException e) {
+			assertEquals("puppies", e.badWord);
+		}
+
+		// other locales take the words as they are
+		WalletFactory factory = WalletFactory.getInstance(Locale.GERMANY);
+		assertEquals(WalletTest.WALLET_MNEMONIC, factory.restoreWallet(WalletTest.WALLET_MNEMONIC, "").getMnemonic());
+
+		try {
+			factory.restoreWallet(paper, "");
+			fail("restored abbreviated words for locale " + factory.getLocale());
+		}
+		catch (MnemonicWordException e) {
+			assertEquals("angl", e.badWord);
+		}
+	}
+
+	private void assertRejected(Wordlist wordlist, Class<? extends MnemonicException> expected, String mnemonic) {
+		try {
+			wordlist.toEntropy(Arrays.asList(mnemonic.split(" ")));
+			fail("accepted invalid mnemonic: " + mnemonic);
+		}
+		catch (MnemonicException e) {
+			assertEquals(expected, e.getClass());
+		}
+	}
+}